@@ -0,0 +1,125 @@
+package com.damonallison.libraries.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Creates the input files benchmarks run against.
+ * <p>
+ * Files are generated once per trial (not per invocation) and are written in
+ * large chunks, so even the 1 GB inputs take seconds rather than minutes to
+ * create. Content is generated from a fixed seed so every run reads the same
+ * bytes.
+ */
+final class BenchmarkFiles {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * @return a new, empty temp file to copy into.
+     */
+    static Path target() throws IOException {
+        Path path = Files.createTempFile("benchmark-out", null);
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    /**
+     * @return a temp file of {@code size} random bytes.
+     */
+    static Path randomBytes(long size) throws IOException {
+        Path path = Files.createTempFile("benchmark-bytes", null);
+        path.toFile().deleteOnExit();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        new Random(42).nextBytes(chunk);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < size; ) {
+                ByteBuffer buf = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, size - written));
+                while (buf.hasRemaining()) {
+                    written += channel.write(buf);
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Creates a text file of about {@code size} bytes, made of lines of
+     * {@code lineLength} characters (including the {@code '\n'}).
+     * <p>
+     * Lines are mostly ASCII with the occasional non-ASCII character (when
+     * {@code charset} can encode it), so decoders leave their ASCII fast
+     * paths now and then, as they would on most real text. The file ends
+     * with a whole line, so it may be slightly larger than {@code size}.
+     */
+    static Path text(long size, int lineLength, Charset charset) throws IOException {
+        Path path = Files.createTempFile("benchmark-text", null);
+        path.toFile().deleteOnExit();
+        final String accent = charset.newEncoder().canEncode('\u00e9') ? "\u00e9" : "e";
+        StringBuilder chunk = new StringBuilder();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            long written = 0;
+            long line = 0;
+            while (written < size) {
+                final long first = line;
+                chunk.setLength(0);
+                while (chunk.length() < CHUNK_SIZE / 2) {
+                    appendLine(chunk, line++, lineLength, accent);
+                }
+                byte[] bytes = chunk.toString().getBytes(charset);
+                if (bytes.length > size - written) {
+                    // The last chunk is written a line at a time, so the file
+                    // ends with a whole line.
+                    for (line = first; written < size; line++) {
+                        chunk.setLength(0);
+                        appendLine(chunk, line, lineLength, accent);
+                        written += write(channel, chunk.toString().getBytes(charset));
+                    }
+                } else {
+                    written += write(channel, bytes);
+                }
+            }
+        }
+        return path;
+    }
+
+    private static int write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Appends a line of {@code length} characters: a line number, then
+     * comma / space separated words, then {@code '\n'}.
+     */
+    static void appendLine(StringBuilder sb, long line, int length, String accent) {
+        final int start = sb.length();
+        sb.append(line).append(',');
+        final String[] words = {"alpha", "beta", "gamma", "delta", "caf" + accent, "omega"};
+        for (int i = 0; sb.length() - start < length - 1; i++) {
+            sb.append(words[(int) ((line + i) % words.length)]).append(i % 3 == 2 ? ", " : ",");
+        }
+        sb.setLength(start + Math.max(1, length - 1));
+        sb.append('\n');
+    }
+
+    static void delete(Path... paths) throws IOException {
+        for (Path path : paths) {
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte level copies in {@link IOUtilities} with each other and
+ * with the JDK's own: {@link Files#copy} and a stream copy through
+ * {@link InputStream#transferTo}.
+ * <p>
+ * The source is read from the page cache after the first iteration, so these
+ * measure the cost of moving data through the JVM and the kernel rather than
+ * the speed of the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyBenchmarks {
+
+    /**
+     * 4 KB, 1 MB, 64 MB and 1 GB.
+     */
+    @Param({"4096", "1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    private Path in;
+    private Path out;
+
+    private final CopyOptions checksum = CopyOptions.newBuilder().setChecksum(true).build();
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        in = BenchmarkFiles.randomBytes(fileSize);
+        out = BenchmarkFiles.target();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(in, out);
+    }
+
+    @Benchmark
+    public void filesCopy() throws IOException {
+        Files.copy(in, out, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Benchmark
+    public long streamCopy() throws IOException {
+        try (InputStream is = Files.newInputStream(in);
+             OutputStream os = Files.newOutputStream(out)) {
+            return is.transferTo(os);
+        }
+    }
+
+    @Benchmark
+    public void byteCopy() throws IOException {
+        IOUtilities.byteCopy(in, out);
+    }
+
+    @Benchmark
+    public long byteCopyChecksum() throws IOException {
+        return IOUtilities.byteCopy(in, out, checksum).getChecksum();
+    }
+
+    @Benchmark
+    public void channelCopy() throws IOException {
+        IOUtilities.channelCopy(in, out);
+    }
+
+    @Benchmark
+    public void channelCopyDefaultBuffer() throws IOException {
+        IOUtilities.channelCopy(in, out, IOUtilities.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Benchmark
+    public void mappedCopy() throws IOException {
+        IOUtilities.mappedCopy(in, out);
+    }
+
+    @Benchmark
+    public void parallelCopy() throws IOException {
+        IOUtilities.parallelCopy(in, out, 4, 8L * 1024 * 1024);
+    }
+
+    @Benchmark
+    public long copyAsync() {
+        return IOUtilities.copyAsync(in, out).join();
+    }
+}
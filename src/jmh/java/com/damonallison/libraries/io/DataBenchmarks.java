@@ -0,0 +1,149 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ColumnarFile} writes behind
+ * {@link IOUtilities#dataCopy} (plain, block encoded and block compressed)
+ * with writing each header and value through a buffered
+ * {@link DataOutputStream}, and reading a memory mapped {@link ColumnarFile}
+ * with reading a {@link DataInputStream}.
+ * <p>
+ * {@code fileSize} is the size of the values as 4 byte ints. Every value has
+ * a header (from a small set of repeated headers), so sizes stop at 64 MB to
+ * keep the header list on the heap. "sequential" values are a counter with
+ * small random steps, which encodes well; "random" values don't.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataBenchmarks {
+
+    @Param({"4096", "1048576", "67108864"})
+    public int fileSize;
+
+    @Param({"sequential", "random"})
+    public String values;
+
+    private List<String> headers;
+    private int[] ints;
+    private Path out;
+    private Path columnar;
+    private Path data;
+
+    @Setup(Level.Trial)
+    public void createValues() throws IOException {
+        final int count = fileSize / Integer.BYTES;
+        Random random = new Random(42);
+        String[] names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "column-" + i;
+        }
+        headers = new ArrayList<>(count);
+        ints = new int[count];
+        int counter = 0;
+        for (int i = 0; i < count; i++) {
+            headers.add(names[i % names.length]);
+            counter += random.nextInt(16);
+            ints[i] = values.equals("sequential") ? counter : random.nextInt();
+        }
+        out = BenchmarkFiles.target();
+        columnar = BenchmarkFiles.target();
+        data = BenchmarkFiles.target();
+        IOUtilities.dataCopy(headers, ints, columnar);
+        dataOutputStream(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(out, columnar, data);
+    }
+
+    @Benchmark
+    public void dataCopy() throws IOException {
+        IOUtilities.dataCopy(headers, ints, out);
+    }
+
+    @Benchmark
+    public void dataCopyEncoded() throws IOException {
+        IOUtilities.dataCopyEncoded(headers, ints, out);
+    }
+
+    @Benchmark
+    public void dataCopyCompressed() throws IOException {
+        IOUtilities.dataCopy(headers, ints, out, BlockCompression.defaults());
+    }
+
+    @Benchmark
+    public void dataOutputStream() throws IOException {
+        dataOutputStream(out);
+    }
+
+    private void dataOutputStream(Path path) throws IOException {
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path), IOUtilities.DEFAULT_BUFFER_SIZE))) {
+            os.writeInt(ints.length);
+            for (String header : headers) {
+                os.writeUTF(header);
+            }
+            for (int value : ints) {
+                os.writeInt(value);
+            }
+        }
+    }
+
+    @Benchmark
+    public long columnarRead() throws IOException {
+        ColumnarFile file = ColumnarFile.open(columnar);
+        IntBuffer buf = file.values();
+        long sum = file.headers().size();
+        while (buf.hasRemaining()) {
+            sum += buf.get();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long dataInputStream() throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(data), IOUtilities.DEFAULT_BUFFER_SIZE))) {
+            final int count = is.readInt();
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += is.readUTF().length();
+            }
+            for (int i = 0; i < count; i++) {
+                sum += is.readInt();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the line copies in {@link IOUtilities} with a
+ * {@link BufferedReader#readLine()} loop, and
+ * {@link IOUtilities#parallelLines} with {@link Files#lines}.
+ * <p>
+ * Line copies scan bytes for line terminators, so they require an ASCII
+ * transparent charset; only those are benchmarked. Short lines stress the per
+ * line overhead, long lines the bulk copying.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineBenchmarks {
+
+    @Param({"4096", "1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    @Param({"16", "120", "4096"})
+    public int lineLength;
+
+    @Param({"UTF-8", "ISO-8859-1"})
+    public String charset;
+
+    private Charset cs;
+    private Path in;
+    private Path out;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        cs = Charset.forName(charset);
+        in = BenchmarkFiles.text(fileSize, lineLength, cs);
+        out = BenchmarkFiles.target();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(in, out);
+    }
+
+    @Benchmark
+    public void lineCopy() throws IOException {
+        IOUtilities.lineCopy(in, out);
+    }
+
+    @Benchmark
+    public void lineCopyTransform() throws IOException {
+        IOUtilities.lineCopy(in, out, LineTransform.IDENTITY);
+    }
+
+    @Benchmark
+    public void lineCopyPipelined() throws IOException {
+        IOUtilities.lineCopy(in, out, LineTransform.IDENTITY, 2);
+    }
+
+    @Benchmark
+    public void readLineCopy() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(in, cs);
+             BufferedWriter writer = Files.newBufferedWriter(out, cs)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    @Benchmark
+    public long filesLines() throws IOException {
+        try (Stream<String> lines = Files.lines(in, cs)) {
+            return lines.parallel().mapToInt(String::length).sum();
+        }
+    }
+
+    @Benchmark
+    public long parallelLines() throws IOException {
+        try (Stream<String> lines = IOUtilities.parallelLines(in, cs)) {
+            return lines.mapToInt(String::length).sum();
+        }
+    }
+}
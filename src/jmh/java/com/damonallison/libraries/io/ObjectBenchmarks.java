@@ -0,0 +1,105 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link IOUtilities#objectCopy} variants: Java serialization,
+ * block compressed serialization and the {@link CodecRegistry} encoding, and
+ * reading each back.
+ * <p>
+ * Values are a mix of {@code Integer}s, {@code Long}s and short
+ * {@code String}s, the kinds of values the default codecs handle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ObjectBenchmarks {
+
+    @Param({"1024", "65536", "1048576"})
+    public int objects;
+
+    private List<String> headers;
+    private List<Serializable> values;
+    private Path out;
+    private Path serialized;
+    private Path encoded;
+
+    @Setup(Level.Trial)
+    public void createValues() throws IOException {
+        headers = new ArrayList<>(objects);
+        values = new ArrayList<>(objects);
+        for (int i = 0; i < objects; i++) {
+            headers.add("value-" + (i % 100));
+            switch (i % 3) {
+                case 0:
+                    values.add(i);
+                    break;
+                case 1:
+                    values.add((long) i << 20);
+                    break;
+                default:
+                    values.add("string " + i);
+                    break;
+            }
+        }
+        out = BenchmarkFiles.target();
+        serialized = BenchmarkFiles.target();
+        encoded = BenchmarkFiles.target();
+        IOUtilities.objectCopy(headers, values, serialized);
+        IOUtilities.objectCopy(headers, values, encoded, CodecRegistry.defaults());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(out, serialized, encoded);
+    }
+
+    @Benchmark
+    public void objectCopy() throws IOException {
+        IOUtilities.objectCopy(headers, values, out);
+    }
+
+    @Benchmark
+    public void objectCopyCompressed() throws IOException {
+        IOUtilities.objectCopy(headers, values, out, BlockCompression.defaults());
+    }
+
+    @Benchmark
+    public void objectCopyCodecs() throws IOException {
+        IOUtilities.objectCopy(headers, values, out, CodecRegistry.defaults());
+    }
+
+    @Benchmark
+    public long objectReader() throws IOException {
+        try (ObjectReader reader = ObjectReader.open(serialized)) {
+            return reader.stream().count();
+        }
+    }
+
+    @Benchmark
+    public int codecFileRead() throws IOException {
+        return CodecFile.read(encoded, CodecRegistry.defaults()).values().size();
+    }
+}
@@ -0,0 +1,84 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link IOUtilities#charCopy} with a {@link BufferedReader} /
+ * {@link BufferedWriter} copy, with and without transcoding.
+ * <p>
+ * UTF-16LE isn't ASCII transparent, so it shows the cost of the general
+ * decode / encode path next to the UTF-8 and ISO-8859-1 fast paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextBenchmarks {
+
+    @Param({"4096", "1048576", "67108864", "1073741824"})
+    public long fileSize;
+
+    @Param({"16", "120", "4096"})
+    public int lineLength;
+
+    @Param({"UTF-8", "ISO-8859-1", "UTF-16LE"})
+    public String charset;
+
+    private Charset cs;
+    private Path in;
+    private Path out;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        cs = Charset.forName(charset);
+        in = BenchmarkFiles.text(fileSize, lineLength, cs);
+        out = BenchmarkFiles.target();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(in, out);
+    }
+
+    @Benchmark
+    public void charCopy() throws IOException {
+        IOUtilities.charCopy(in, cs, out, cs, CodingErrorAction.REPLACE);
+    }
+
+    @Benchmark
+    public void charCopyToUtf8() throws IOException {
+        IOUtilities.charCopy(in, cs, out, StandardCharsets.UTF_8, CodingErrorAction.REPLACE);
+    }
+
+    @Benchmark
+    public void readerWriterCopy() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(in, cs);
+             BufferedWriter writer = Files.newBufferedWriter(out, cs)) {
+            reader.transferTo(writer);
+        }
+    }
+}
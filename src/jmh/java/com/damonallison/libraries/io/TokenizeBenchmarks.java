@@ -0,0 +1,107 @@
+package com.damonallison.libraries.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compares {@link IOUtilities#tokenize} with {@link Scanner} (what it used to
+ * wrap) and {@link Pattern#split}.
+ * <p>
+ * {@code ","}, {@code "[,;]"} and {@code "\\s+"} are simple delimiters which
+ * {@link Tokenizer} scans without a regex; {@code ",\\s*"} falls back to the
+ * regex engine. UTF-16LE files can't be tokenized in place, so
+ * {@code tokenizePath} falls back to a {@link Scanner} for them.
+ * <p>
+ * The string benchmarks hold the whole input in memory, so file sizes stop at
+ * 64 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TokenizeBenchmarks {
+
+    @Param({"4096", "1048576", "67108864"})
+    public long fileSize;
+
+    @Param({",", "[,;]", "\\s+", ",\\s*"})
+    public String delimiter;
+
+    @Param({"UTF-8", "UTF-16LE"})
+    public String charset;
+
+    private Pattern pattern;
+    private Charset cs;
+    private Path in;
+    private String input;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        pattern = Pattern.compile(delimiter);
+        cs = Charset.forName(charset);
+        in = BenchmarkFiles.text(fileSize, 120, cs);
+        input = new String(Files.readAllBytes(in), cs);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkFiles.delete(in);
+    }
+
+    @Benchmark
+    public int tokenize() {
+        return IOUtilities.tokenize(input, pattern).size();
+    }
+
+    @Benchmark
+    public int tokenizeVisitor() {
+        final int[] count = new int[1];
+        IOUtilities.tokenize(input, pattern, (s, start, end) -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public int scanner() {
+        int count = 0;
+        Scanner scanner = new Scanner(input).useDelimiter(pattern);
+        while (scanner.hasNext()) {
+            scanner.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int split() {
+        return pattern.split(input).length;
+    }
+
+    @Benchmark
+    public long tokenizePath() throws IOException {
+        try (Stream<CharSequence> tokens = IOUtilities.tokenize(in, pattern, cs)) {
+            return tokens.count();
+        }
+    }
+}
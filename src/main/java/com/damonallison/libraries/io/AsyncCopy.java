@@ -0,0 +1,298 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies a file with {@link AsynchronousFileChannel}s, without blocking the
+ * calling thread.
+ * <p>
+ * The copy is driven by a fixed number of "slots". Each slot repeatedly
+ * claims the next block of the file, reads it, and writes it, chaining each
+ * step from the completion handler of the previous one. With {@code n} slots,
+ * up to {@code n} reads / writes are in flight at once and no thread is ever
+ * blocked waiting on I/O.
+ * <p>
+ * Completing the returned future (i.e., cancelling it) stops the copy: each
+ * slot stops before starting its next operation and the channels are closed.
+ * <p>
+ * When checksumming, each block's CRC32C is recorded by block number as it
+ * is read. Once every block has been written, the block checksums are
+ * combined in file order.
+ */
+final class AsyncCopy {
+
+    private static final Set<OpenOption> READ = Set.of(StandardOpenOption.READ);
+    private static final Set<OpenOption> WRITE = Set.of(
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+
+    private final AsynchronousFileChannel source;
+    private final AsynchronousFileChannel target;
+    private final Path out;
+    private final long size;
+    private final int blockSize;
+    private final CopyOptions options;
+    private final IOMetrics.Operation op;
+
+    /**
+     * The checksum of each block, or {@code null} if not checksumming.
+     */
+    private final long[] checksums;
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final CompletableFuture<CopyResult> result = new CompletableFuture<>();
+
+    private AsyncCopy(AsynchronousFileChannel source, AsynchronousFileChannel target, Path out,
+                      long size, int blockSize, CopyOptions options,
+                      IOMetrics.Operation op) throws IOException {
+        this.source = source;
+        this.target = target;
+        this.out = out;
+        this.size = size;
+        this.blockSize = blockSize;
+        this.options = options;
+        this.op = op;
+        if (options.isChecksum()) {
+            final long blocks = (size + blockSize - 1) / blockSize;
+            if (blocks > Integer.MAX_VALUE - 8) {
+                throw new IOException(String.format("%d blocks is too many to checksum", blocks));
+            }
+            this.checksums = new long[(int) blocks];
+        } else {
+            this.checksums = null;
+        }
+    }
+
+    /**
+     * Starts copying {@code in} to {@code out}.
+     *
+     * @param inFlight  the maximum number of blocks being read / written at
+     *                  the same time
+     * @param blockSize the size of each read / write
+     * @param executor  runs the channels' completion handlers. If
+     *                  {@code null}, the JVM's default thread pool is used.
+     * @return a future which completes with the number of bytes copied
+     */
+    static CompletableFuture<Long> start(Path in, Path out, int inFlight,
+                                         int blockSize, ExecutorService executor) {
+        CompletableFuture<CopyResult> copy = start(in, out, inFlight, blockSize, executor,
+                CopyOptions.defaults());
+        CompletableFuture<Long> bytes = copy.thenApply(CopyResult::getBytes);
+        // Completing (i.e., cancelling) the returned future stops the copy.
+        bytes.whenComplete((n, t) -> copy.cancel(false));
+        return bytes;
+    }
+
+    /**
+     * Starts copying {@code in} to {@code out}, checksumming and verifying
+     * the copy as {@code options} asks.
+     *
+     * @return a future which completes with the number of bytes copied and
+     * their checksum
+     * @see #start(Path, Path, int, int, ExecutorService)
+     */
+    static CompletableFuture<CopyResult> start(Path in, Path out, int inFlight, int blockSize,
+                                               ExecutorService executor, CopyOptions options) {
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(inFlight > 0, "inFlight must be > 0");
+        Preconditions.checkArgument(blockSize > 0, "blockSize must be > 0");
+        Preconditions.checkNotNull(options);
+
+        AsynchronousFileChannel source = null;
+        AsynchronousFileChannel target = null;
+        try {
+            source = AsynchronousFileChannel.open(in, READ, executor);
+            target = AsynchronousFileChannel.open(out, WRITE, executor);
+            AsyncCopy copy = new AsyncCopy(source, target, out, source.size(), blockSize, options,
+                    IOMetrics.start("copyAsync", blockSize));
+            copy.start(inFlight);
+            return copy.result;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(source);
+            closeQuietly(target);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void start(int inFlight) {
+        result.whenComplete((bytes, t) -> {
+            closeQuietly(source);
+            closeQuietly(target);
+            op.finish();
+        });
+        final long blocks = (size + blockSize - 1) / blockSize;
+        final int slots = (int) Math.min(inFlight, blocks);
+        if (slots == 0) {
+            complete();
+            return;
+        }
+        active.set(slots);
+        for (int i = 0; i < slots; i++) {
+            new Slot().nextBlock();
+        }
+    }
+
+    /**
+     * Completes the copy once every block has been written.
+     */
+    private void complete() {
+        if (result.isDone()) {
+            return;
+        }
+        CopyResult copy;
+        if (checksums == null) {
+            copy = CopyResult.of(copied.get());
+        } else {
+            long crc = 0;
+            for (int i = 0; i < checksums.length; i++) {
+                crc = Crc32c.combine(crc, checksums[i], Math.min(blockSize, size - (long) i * blockSize));
+            }
+            copy = new CopyResult(copied.get(), crc, false);
+        }
+        if (options.isVerify()) {
+            closeQuietly(target);
+            try {
+                copy = IOUtilities.verify(out, copy);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+        }
+        // Before completing, so the metrics are recorded by the time a
+        // caller waiting on the result sees it.
+        op.finish();
+        result.complete(copy);
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The copy has already completed (or failed). Nothing to report to.
+        }
+    }
+
+    /**
+     * Copies one block at a time, until there are no blocks left.
+     */
+    private final class Slot {
+
+        private final ByteBuffer buf = IOUtilities.BUFFER_POOL.acquire(blockSize);
+        private long position;
+        private int length;
+
+        /**
+         * When the outstanding read / write was started, for metrics.
+         */
+        private long begin;
+
+        private final CompletionHandler<Integer, Void> onRead = new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void attachment) {
+                op.read(n, begin);
+                if (n < 0) {
+                    fail(new EOFException(String.format(
+                            "expected %d bytes at offset %d, file was truncated",
+                            buf.remaining(), position + buf.position())));
+                } else if (buf.hasRemaining()) {
+                    read();
+                } else {
+                    buf.flip();
+                    if (checksums != null) {
+                        checksums[(int) (position / blockSize)] = Crc32c.checksum(buf);
+                    }
+                    write();
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                fail(t);
+            }
+        };
+
+        private final CompletionHandler<Integer, Void> onWrite = new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void attachment) {
+                op.write(n, begin);
+                if (buf.hasRemaining()) {
+                    write();
+                } else {
+                    copied.addAndGet(length);
+                    nextBlock();
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, Void attachment) {
+                fail(t);
+            }
+        };
+
+        void nextBlock() {
+            if (result.isDone()) {
+                finish();
+                return;
+            }
+            position = next.getAndAdd(blockSize);
+            if (position >= size) {
+                finish();
+                return;
+            }
+            length = (int) Math.min(blockSize, size - position);
+            buf.clear().limit(length);
+            read();
+        }
+
+        private void read() {
+            try {
+                begin = op.begin();
+                source.read(buf, position + buf.position(), null, onRead);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void write() {
+            try {
+                begin = op.begin();
+                target.write(buf, position + buf.position(), null, onWrite);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void finish() {
+            IOUtilities.BUFFER_POOL.release(buf);
+            if (active.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void fail(Throwable t) {
+            IOUtilities.BUFFER_POOL.release(buf);
+            result.completeExceptionally(t);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by {@link BlockCompressedOutputStream}.
+ * <p>
+ * The block index is read when the file is opened. Any block can then be
+ * decompressed on its own, so reading can start at any uncompressed position
+ * ({@link #newInputStream(long)}) and blocks can be decompressed in parallel
+ * ({@link #readFully()}, and the read ahead done by the input streams).
+ * <p>
+ * Instances are thread safe.
+ */
+public final class BlockCompressedFile implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] uncompressedLengths;
+
+    /**
+     * {@code positions[i]} is the uncompressed position of block {@code i}.
+     * {@code positions[blockCount]} is the uncompressed size.
+     */
+    private final long[] positions;
+
+    private BlockCompressedFile(Path path, FileChannel channel, long[] offsets,
+                                int[] compressedLengths, int[] uncompressedLengths) {
+        this.path = path;
+        this.channel = channel;
+        this.offsets = offsets;
+        this.compressedLengths = compressedLengths;
+        this.uncompressedLengths = uncompressedLengths;
+        this.positions = new long[offsets.length + 1];
+        for (int i = 0; i < offsets.length; i++) {
+            positions[i + 1] = positions[i] + uncompressedLengths[i];
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code path} starts like a block compressed
+     * file.
+     */
+    public static boolean isBlockCompressed(Path path) throws IOException {
+        Preconditions.checkNotNull(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == BlockCompressedOutputStream.MAGIC;
+        }
+    }
+
+    public static BlockCompressedFile open(Path path) throws IOException {
+        Preconditions.checkNotNull(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size < BlockCompressedOutputStream.HEADER_SIZE + Integer.BYTES
+                    + BlockCompressedOutputStream.FOOTER_SIZE) {
+                throw new IOException(path + " is not a block compressed file (too small)");
+            }
+            ByteBuffer header = read(channel, 0, BlockCompressedOutputStream.HEADER_SIZE);
+            if (header.getInt() != BlockCompressedOutputStream.MAGIC) {
+                throw new IOException(path + " is not a block compressed file");
+            }
+            final byte version = header.get();
+            if (version > BlockCompressedOutputStream.VERSION) {
+                throw new IOException(String.format("%s has version %d, only versions <= %d are supported",
+                        path, version, BlockCompressedOutputStream.VERSION));
+            }
+            ByteBuffer footer = read(channel, size - BlockCompressedOutputStream.FOOTER_SIZE,
+                    BlockCompressedOutputStream.FOOTER_SIZE);
+            final long indexOffset = footer.getLong();
+            if (footer.getInt() != BlockCompressedOutputStream.MAGIC
+                    || indexOffset < BlockCompressedOutputStream.HEADER_SIZE
+                    || indexOffset > size - BlockCompressedOutputStream.FOOTER_SIZE - Integer.BYTES) {
+                throw new IOException(path + " is corrupt or truncated (bad footer)");
+            }
+            final long indexSize = size - BlockCompressedOutputStream.FOOTER_SIZE - indexOffset;
+            ByteBuffer index = read(channel, indexOffset, (int) Math.min(indexSize, Integer.MAX_VALUE));
+            final int blocks = index.getInt();
+            if ((long) blocks * (8 + 4 + 4) != indexSize - Integer.BYTES) {
+                throw new IOException(path + " is corrupt (bad block index)");
+            }
+            long[] offsets = new long[blocks];
+            int[] compressedLengths = new int[blocks];
+            int[] uncompressedLengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                offsets[i] = index.getLong();
+                compressedLengths[i] = index.getInt();
+                uncompressedLengths[i] = index.getInt();
+                if (offsets[i] + compressedLengths[i] > indexOffset) {
+                    throw new IOException(path + " is corrupt (block " + i + " overlaps the index)");
+                }
+            }
+            return new BlockCompressedFile(path, channel, offsets, compressedLengths, uncompressedLengths);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buf.flip();
+    }
+
+    public int blockCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the total number of uncompressed bytes.
+     */
+    public long size() {
+        return positions[offsets.length];
+    }
+
+    /**
+     * @return the uncompressed position at which block {@code block} starts.
+     */
+    public long blockPosition(int block) {
+        Preconditions.checkElementIndex(block, offsets.length + 1);
+        return positions[block];
+    }
+
+    /**
+     * @return the block containing uncompressed position {@code position}.
+     */
+    public int blockAt(long position) {
+        Preconditions.checkArgument(position >= 0 && position < size(),
+                "position %s is outside of [0, %s)", position, size());
+        int i = Arrays.binarySearch(positions, position);
+        if (i < 0) {
+            return -i - 2;
+        }
+        // Skip over any empty blocks starting at the same position.
+        while (uncompressedLengths[i] == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads and decompresses a single block.
+     */
+    public byte[] readBlock(int block) throws IOException {
+        Preconditions.checkElementIndex(block, offsets.length);
+        ByteBuffer compressed = read(channel, offsets[block], compressedLengths[block]);
+        byte[] out = new byte[uncompressedLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, compressed.limit());
+            int n = 0;
+            while (n < out.length) {
+                int inflated = inflater.inflate(out, n, out.length - n);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != out.length || !inflater.finished()) {
+                throw new IOException(String.format("%s block %d is corrupt (expected %d bytes, got %d)",
+                        path, block, out.length, n));
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("%s block %d is corrupt", path, block), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the entire file, decompressing blocks in parallel on the
+     * common fork / join pool.
+     *
+     * @throws IOException if the uncompressed data does not fit in a single
+     *                     array
+     */
+    public byte[] readFully() throws IOException {
+        if (size() > Integer.MAX_VALUE - 8) {
+            throw new IOException(path + " is too large to decompress into memory");
+        }
+        final byte[] out = new byte[(int) size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            final int block = i;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    byte[] b = readBlock(block);
+                    System.arraycopy(b, 0, out, (int) positions[block], b.length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            await(future);
+        }
+        return out;
+    }
+
+    /**
+     * @see #newInputStream(long, int, Executor)
+     */
+    public InputStream newInputStream(long position) {
+        return newInputStream(position, ForkJoinPool.getCommonPoolParallelism(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a stream of the uncompressed bytes starting at
+     * {@code position}. Only the block containing {@code position} (and the
+     * blocks after it) are read.
+     *
+     * @param readAhead the number of blocks decompressed ahead of the reader
+     * @param executor  decompresses blocks
+     */
+    public InputStream newInputStream(long position, int readAhead, Executor executor) {
+        Preconditions.checkArgument(position >= 0 && position <= size(),
+                "position %s is outside of [0, %s]", position, size());
+        Preconditions.checkArgument(readAhead > 0, "readAhead must be > 0");
+        Preconditions.checkNotNull(executor);
+        return new BlockInputStream(position, readAhead, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while decompressing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads blocks in order, keeping up to {@code readAhead} blocks being
+     * decompressed ahead of the reader.
+     */
+    private final class BlockInputStream extends InputStream {
+
+        private final int readAhead;
+        private final Executor executor;
+        private final Queue<CompletableFuture<byte[]>> ahead = new ArrayDeque<>();
+        private int nextBlock;
+        private byte[] current = new byte[0];
+        private int pos;
+
+        BlockInputStream(long position, int readAhead, Executor executor) {
+            this.readAhead = readAhead;
+            this.executor = executor;
+            if (position == size()) {
+                nextBlock = offsets.length;
+                return;
+            }
+            final int first = blockAt(position);
+            nextBlock = first;
+            fillAhead();
+            try {
+                current = await(ahead.remove());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pos = (int) (position - positions[first]);
+            fillAhead();
+        }
+
+        private void fillAhead() {
+            while (ahead.size() < readAhead && nextBlock < offsets.length) {
+                final int block = nextBlock++;
+                ahead.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return readBlock(block);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+        }
+
+        /**
+         * @return {@code false} at the end of the file
+         */
+        private boolean advance() throws IOException {
+            while (pos == current.length) {
+                if (ahead.isEmpty()) {
+                    return false;
+                }
+                current = await(ahead.remove());
+                pos = 0;
+                fillAhead();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return advance() ? current[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Preconditions.checkPositionIndexes(off, off + len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current.length - pos;
+        }
+
+        @Override
+        public void close() {
+            for (CompletableFuture<byte[]> future : ahead) {
+                future.cancel(false);
+            }
+            ahead.clear();
+        }
+    }
+}
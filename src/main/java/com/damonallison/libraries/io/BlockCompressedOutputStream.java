@@ -0,0 +1,300 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses its output in independent, fixed size blocks on a pool of
+ * threads (in the style of {@code pigz}).
+ * <p>
+ * A single {@link java.util.zip.GZIPOutputStream} compresses on the writing
+ * thread, which makes fast writers CPU bound. Here, each full block is handed
+ * to a worker to compress with its own {@link Deflater} while the caller
+ * keeps writing. Compressed blocks are written in order as they complete. At
+ * most {@code 2 * parallelism} blocks are buffered at a time. Block buffers
+ * and {@link Deflater}s are reused from block to block rather than
+ * allocated for each one.
+ * <p>
+ * Because blocks are compressed independently, they can also be decompressed
+ * independently: in parallel, or starting from any block. The file ends with
+ * an index of every block to make that possible. The layout is:
+ * <pre>
+ * int    MAGIC
+ * byte   VERSION
+ * block  (x block count, zlib compressed)
+ * index
+ *   int  block count
+ *   per block: long file offset, int compressed length, int uncompressed length
+ * footer (FOOTER_SIZE bytes)
+ *   long index offset
+ *   int  MAGIC
+ * </pre>
+ * Compressing independent blocks costs a little compression ratio, since
+ * matches can't span blocks.
+ *
+ * @see BlockCompressedFile
+ */
+public final class BlockCompressedOutputStream extends OutputStream {
+
+    /**
+     * "DBLK"
+     */
+    static final int MAGIC = 0x44424C4B;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1;
+    static final int FOOTER_SIZE = 8 + 4;
+
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final int level;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Queue<Future<Block>> pending = new ArrayDeque<>();
+
+    /**
+     * Uncompressed and compressed block buffers which have been written and
+     * can be reused. Only used by the writing thread.
+     */
+    private final ArrayDeque<byte[]> freeBlocks = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> freeOutputs = new ArrayDeque<>();
+
+    /**
+     * Idle deflaters. A worker takes one for each block and returns it after,
+     * so there are at most {@code parallelism} of them.
+     */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private byte[] block;
+    private int count;
+
+    private long position = HEADER_SIZE;
+    private int blocks;
+    private long[] offsets = new long[64];
+    private int[] compressedLengths = new int[64];
+    private int[] uncompressedLengths = new int[64];
+    private boolean closed;
+
+    public BlockCompressedOutputStream(OutputStream out, BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(compression);
+        this.out = new DataOutputStream(out);
+        this.blockSize = compression.getBlockSize();
+        this.level = compression.getLevel();
+        this.maxPending = 2 * compression.getParallelism();
+        // Write the header before starting any threads, so a failed write
+        // doesn't leave an executor behind.
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.executor = Executors.newFixedThreadPool(compression.getParallelism(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("block-compressor-%d")
+                        .setDaemon(true)
+                        .build());
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        Preconditions.checkState(!closed, "stream is closed");
+        if (count == blockSize) {
+            submit();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        Preconditions.checkState(!closed, "stream is closed");
+        while (len > 0) {
+            if (count == blockSize) {
+                submit();
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Hands the current block to a worker, first writing the oldest pending
+     * block if too many are outstanding.
+     */
+    private void submit() throws IOException {
+        Preconditions.checkState(!closed, "stream is closed");
+        if (pending.size() >= maxPending) {
+            writeNext();
+        }
+        final byte[] input = block;
+        final int length = count;
+        final byte[] output = freeOutputs.poll();
+        pending.add(executor.submit(() -> compress(input, length, output)));
+        block = freeBlocks.isEmpty() ? new byte[blockSize] : freeBlocks.pop();
+        count = 0;
+    }
+
+    /**
+     * Waits for the oldest pending block to be compressed and writes it.
+     */
+    private void writeNext() throws IOException {
+        final Block compressed;
+        try {
+            compressed = pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("block compression failed", e.getCause());
+        }
+        if (blocks == offsets.length) {
+            offsets = Arrays.copyOf(offsets, blocks * 2);
+            compressedLengths = Arrays.copyOf(compressedLengths, blocks * 2);
+            uncompressedLengths = Arrays.copyOf(uncompressedLengths, blocks * 2);
+        }
+        offsets[blocks] = position;
+        compressedLengths[blocks] = compressed.length;
+        uncompressedLengths[blocks] = compressed.uncompressedLength;
+        blocks++;
+        out.write(compressed.bytes, 0, compressed.length);
+        position += compressed.length;
+        recycle(freeBlocks, compressed.input);
+        recycle(freeOutputs, compressed.bytes);
+    }
+
+    /**
+     * Keeps {@code buf} for reuse, up to one per block which can be in flight.
+     */
+    private void recycle(ArrayDeque<byte[]> free, byte[] buf) {
+        if (free.size() < maxPending) {
+            free.push(buf);
+        }
+    }
+
+    /**
+     * Compresses a block on a worker, with an idle deflater if there is one.
+     *
+     * @param output a buffer to compress into, or {@code null} to allocate
+     *               one
+     */
+    private Block compress(byte[] input, int length, byte[] output) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            return Block.compress(deflater, input, length, output);
+        } finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+    }
+
+    /**
+     * Writes any buffered blocks which have already been compressed. A
+     * partially filled block is not written until it fills or the stream is
+     * closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the final block and the block index, then closes the underlying
+     * stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0) {
+                submit();
+            }
+            closed = true;
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            final long indexOffset = position;
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(compressedLengths[i]);
+                out.writeInt(uncompressedLengths[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null) {
+                deflater.end();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * A compressed block.
+     */
+    private static final class Block {
+        /**
+         * The uncompressed block, returned so its buffer can be reused.
+         */
+        final byte[] input;
+        final byte[] bytes;
+        final int length;
+        final int uncompressedLength;
+
+        private Block(byte[] input, byte[] bytes, int length, int uncompressedLength) {
+            this.input = input;
+            this.bytes = bytes;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        /**
+         * @param deflater a new or reset deflater
+         * @param output   a buffer to compress into, or {@code null}
+         */
+        static Block compress(Deflater deflater, byte[] input, int length, byte[] output) {
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            // Incompressible data grows slightly; start with room for it.
+            final int capacity = length + (length >> 6) + 64;
+            if (output == null || output.length < capacity) {
+                output = new byte[capacity];
+            }
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                n += deflater.deflate(output, n, output.length - n);
+            }
+            return new Block(input, output, n, length);
+        }
+    }
+}
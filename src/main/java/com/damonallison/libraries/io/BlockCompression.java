@@ -0,0 +1,91 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.util.zip.Deflater;
+
+/**
+ * Settings for writing block compressed files.
+ *
+ * @see BlockCompressedOutputStream
+ */
+public final class BlockCompression {
+
+    private final int blockSize;
+    private final int level;
+    private final int parallelism;
+
+    private BlockCompression(int blockSize, int level, int parallelism) {
+        this.blockSize = blockSize;
+        this.level = level;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return settings with the default block size, compression level and
+     * one compressing thread per processor.
+     */
+    public static BlockCompression defaults() {
+        return newBuilder().build();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int blockSize = 1024 * 1024;
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * The number of uncompressed bytes in each block. Larger blocks
+         * compress better; smaller blocks make seeking cheaper.
+         */
+        public Builder setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * The {@link Deflater} compression level, from
+         * {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+         */
+        public Builder setLevel(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * The number of blocks compressed concurrently.
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public BlockCompression build() {
+            Preconditions.checkArgument(blockSize > 0, "blockSize must be > 0");
+            Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+                            || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+                    "invalid compression level %s", level);
+            Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+            return new BlockCompression(blockSize, level, parallelism);
+        }
+    }
+}
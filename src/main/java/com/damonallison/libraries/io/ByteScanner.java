@@ -0,0 +1,195 @@
+package com.damonallison.libraries.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans byte arrays a word (8 bytes) at a time.
+ * <p>
+ * SWAR (SIMD within a register) treats a {@code long} as 8 byte lanes and
+ * tests all of them with a handful of arithmetic / bitwise operations, rather
+ * than branching on every byte. For example, a word is pure ASCII if none of
+ * its bytes has the high bit set: {@code (word & 0x8080808080808080L) == 0}.
+ * <p>
+ * Words are read little endian, so the lowest set bit of a result mask
+ * identifies the first matching byte.
+ */
+final class ByteScanner {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long LF = LOW_BITS * '\n';
+    private static final long CR = LOW_BITS * '\r';
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Returns the index of the first byte in {@code [from, to)} which is not
+     * ASCII (i.e., has its high bit set), or {@code to} if all bytes are ASCII.
+     */
+    static int firstNonAscii(byte[] a, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long mask = (long) LONGS.get(a, i) & HIGH_BITS;
+            if (mask != 0) {
+                return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (a[i] < 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Returns the index of the first ASCII byte in {@code [from, to)}, or
+     * {@code to} if there are none.
+     */
+    static int firstAscii(byte[] a, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long mask = ~(long) LONGS.get(a, i) & HIGH_BITS;
+            if (mask != 0) {
+                return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (a[i] >= 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Returns the index of the first {@code '\n'} or {@code '\r'} in
+     * {@code [from, to)}, or {@code to} if there are none.
+     */
+    static int firstLineTerminator(byte[] a, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(a, i);
+            long mask = zeroBytes(word ^ LF) | zeroBytes(word ^ CR);
+            if (mask != 0) {
+                return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (a[i] == '\n' || a[i] == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Sets the high bit of each byte lane in {@code word} which is zero.
+     * <p>
+     * A borrow can only propagate upwards from a zero lane, so lanes above the
+     * first zero may be falsely marked. The lowest marked lane is always exact.
+     */
+    private static long zeroBytes(long word) {
+        return (word - LOW_BITS) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Returns the end of the longest prefix of {@code [from, to)} which is
+     * made up of complete, well formed UTF-8 sequences.
+     * <p>
+     * Overlong encodings, surrogates, and code points above U+10FFFF are
+     * rejected, matching the JDK's UTF-8 decoder.
+     */
+    static int validUtf8Prefix(byte[] a, int from, int to) {
+        int i = from;
+        while (i < to) {
+            i = firstNonAscii(a, i, to);
+            if (i == to) {
+                return to;
+            }
+            int n = utf8SequenceLength(a, i, to);
+            if (n <= 0) {
+                return i;
+            }
+            i += n;
+        }
+        return i;
+    }
+
+    /**
+     * Returns {@code true} if {@code [from, to)} is the valid beginning of a
+     * UTF-8 sequence which was cut short (i.e., more input is needed).
+     */
+    static boolean isIncompleteUtf8(byte[] a, int from, int to) {
+        return from < to && utf8SequenceLength(a, from, to) == 0;
+    }
+
+    /**
+     * Returns the length of the well formed multi-byte sequence starting at
+     * {@code i}, {@code 0} if the sequence is valid so far but truncated by
+     * {@code to}, or {@code -1} if it is malformed.
+     */
+    private static int utf8SequenceLength(byte[] a, int i, int to) {
+        final int b0 = a[i] & 0xFF;
+        final int length;
+        int lower = 0x80;
+        int upper = 0xBF;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            length = 2;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            length = 3;
+            if (b0 == 0xE0) {
+                lower = 0xA0; // overlong
+            } else if (b0 == 0xED) {
+                upper = 0x9F; // surrogates
+            }
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            length = 4;
+            if (b0 == 0xF0) {
+                lower = 0x90; // overlong
+            } else if (b0 == 0xF4) {
+                upper = 0x8F; // > U+10FFFF
+            }
+        } else {
+            return -1;
+        }
+        for (int k = 1; k < length; k++) {
+            if (i + k >= to) {
+                return 0;
+            }
+            int b = a[i + k] & 0xFF;
+            if (b < lower || b > upper) {
+                return -1;
+            }
+            lower = 0x80;
+            upper = 0xBF;
+        }
+        return length;
+    }
+
+    /**
+     * Returns {@code true} if {@code charset} encodes U+0000 - U+007F as the
+     * single bytes 0x00 - 0x7F, and never uses a byte in that range as part of
+     * any other character.
+     * <p>
+     * For these charsets ASCII text can be copied as raw bytes, and an ASCII
+     * byte always starts a new character.
+     */
+    static boolean isAsciiTransparent(Charset charset) {
+        if (charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        String name = charset.name();
+        return name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+}
@@ -0,0 +1,111 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A file of string headers followed by values, encoded with the
+ * {@link ObjectCodec}s in a {@link CodecRegistry}.
+ * <pre>
+ * int     MAGIC
+ * varint  VERSION
+ * varint  header count
+ * string  header (x header count)
+ * varint  value count
+ * object  value (x value count, see CodecOutput#writeObject)
+ * </pre>
+ * This is the compact alternative to writing the same lists with an
+ * {@link java.io.ObjectOutputStream}, which writes a class descriptor for
+ * every new class and a handle or header for every object.
+ */
+public final class CodecFile {
+
+    /**
+     * "DOBJ"
+     */
+    static final int MAGIC = 0x444F424A;
+    static final int VERSION = 1;
+
+    private final List<String> headers;
+    private final List<Object> values;
+
+    private CodecFile(List<String> headers, List<Object> values) {
+        this.headers = headers;
+        this.values = values;
+    }
+
+    public static void write(Path out, List<String> headers, List<?> values,
+                             CodecRegistry registry) throws IOException {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkNotNull(registry);
+
+        try (OutputStream os = Files.newOutputStream(out)) {
+            CodecOutput output = new CodecOutput(os, registry);
+            output.writeInt(MAGIC);
+            output.writeVarInt(VERSION);
+            output.writeVarInt(headers.size());
+            for (String header : headers) {
+                output.writeString(header);
+            }
+            output.writeVarInt(values.size());
+            for (Object value : values) {
+                output.writeObject(value);
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Reads a file written by {@link #write} with the same codecs.
+     *
+     * @throws IOException if {@code in} is not a codec file, was written by a
+     *                     newer version of this class, or holds a tag not in
+     *                     {@code registry}
+     */
+    public static CodecFile read(Path in, CodecRegistry registry) throws IOException {
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(registry);
+
+        try (InputStream is = Files.newInputStream(in)) {
+            CodecInput input = new CodecInput(is, registry);
+            if (input.readInt() != MAGIC) {
+                throw new IOException(in + " is not a codec file");
+            }
+            final int version = input.readVarInt();
+            if (version > VERSION) {
+                throw new IOException(String.format(
+                        "%s has version %d, only versions <= %d are supported", in, version, VERSION));
+            }
+            final int headerCount = input.readVarInt();
+            List<String> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(input.readString());
+            }
+            final int valueCount = input.readVarInt();
+            List<Object> values = new ArrayList<>(valueCount);
+            for (int i = 0; i < valueCount; i++) {
+                values.add(input.readObject());
+            }
+            return new CodecFile(Collections.unmodifiableList(headers),
+                    Collections.unmodifiableList(values));
+        }
+    }
+
+    public List<String> headers() {
+        return headers;
+    }
+
+    public List<Object> values() {
+        return values;
+    }
+}
@@ -0,0 +1,198 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads values written by {@link CodecOutput}.
+ * <p>
+ * Input is buffered internally and decoded straight out of the buffer:
+ * numbers are decoded without allocating, and strings are created directly
+ * from the buffered bytes. Because of the read ahead, the underlying stream's
+ * position is undefined after reading. The stream is not closed.
+ */
+public final class CodecInput {
+
+    private final InputStream in;
+    private final CodecRegistry registry;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+
+    public CodecInput(InputStream in, CodecRegistry registry) {
+        this(in, registry, IOUtilities.DEFAULT_BUFFER_SIZE);
+    }
+
+    CodecInput(InputStream in, CodecRegistry registry, int bufferSize) {
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(registry);
+        Preconditions.checkArgument(bufferSize >= Varints.MAX_LONG_BYTES);
+        this.in = in;
+        this.registry = registry;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Buffers at least {@code n} bytes ({@code n <= buf.length}).
+     *
+     * @return {@code false} if the stream ended first
+     */
+    private boolean fill(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < n) {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private void require(int n) throws IOException {
+        if (!fill(n)) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * @return {@code true} if all input has been read
+     */
+    public boolean isAtEnd() throws IOException {
+        return !fill(1);
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buf[pos++];
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        long n = readVarLong();
+        if ((n >>> 32) != 0) {
+            throw new StreamCorruptedException("varint overflows an int");
+        }
+        return (int) n;
+    }
+
+    public int readSignedVarInt() throws IOException {
+        return Varints.unZigZag(readVarInt());
+    }
+
+    public long readVarLong() throws IOException {
+        // The last varint may be shorter than MAX_LONG_BYTES.
+        fill(Varints.MAX_LONG_BYTES);
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos == limit) {
+                throw new EOFException();
+            }
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("malformed varint");
+    }
+
+    public long readSignedVarLong() throws IOException {
+        return Varints.unZigZag(readVarLong());
+    }
+
+    public int readInt() throws IOException {
+        require(Integer.BYTES);
+        int n = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            n = (n << 8) | (buf[pos++] & 0xFF);
+        }
+        return n;
+    }
+
+    public long readLong() throws IOException {
+        require(Long.BYTES);
+        long n = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            n = (n << 8) | (buf[pos++] & 0xFF);
+        }
+        return n;
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public void readBytes(byte[] b, int offset, int length) throws IOException {
+        Preconditions.checkPositionIndexes(offset, offset + length, b.length);
+        int n = Math.min(length, limit - pos);
+        System.arraycopy(buf, pos, b, offset, n);
+        pos += n;
+        offset += n;
+        length -= n;
+        while (length > 0) {
+            int read = in.read(b, offset, length);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    public String readString() throws IOException {
+        final int length = readVarInt();
+        if (length <= buf.length) {
+            require(length);
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+        byte[] utf8 = new byte[length];
+        readBytes(utf8, 0, length);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a value written by {@link CodecOutput#writeObject(Object)}.
+     */
+    public Object readObject() throws IOException {
+        final int tag = readVarInt();
+        if (tag == CodecRegistry.TAG_NULL) {
+            return null;
+        }
+        if (tag == CodecRegistry.TAG_SERIALIZABLE) {
+            byte[] bytes = new byte[readVarInt()];
+            readBytes(bytes, 0, bytes.length);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        ObjectCodec<?> codec = registry.codec(tag);
+        if (codec == null) {
+            throw new StreamCorruptedException("no codec registered for tag " + tag);
+        }
+        return codec.decode(this);
+    }
+}
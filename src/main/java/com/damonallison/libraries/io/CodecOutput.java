@@ -0,0 +1,186 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes values in the compact binary form used by {@link ObjectCodec}s.
+ * <p>
+ * Integers are written as (zigzag) varints (see {@link Varints}), strings as
+ * a varint byte length followed by UTF-8 bytes. Output is buffered
+ * internally; call {@link #flush()} when done. The underlying stream is not
+ * closed.
+ */
+public final class CodecOutput {
+
+    private final OutputStream out;
+    private final CodecRegistry registry;
+    private final byte[] buf;
+    private int pos;
+
+    public CodecOutput(OutputStream out, CodecRegistry registry) {
+        this(out, registry, IOUtilities.DEFAULT_BUFFER_SIZE);
+    }
+
+    CodecOutput(OutputStream out, CodecRegistry registry, int bufferSize) {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(registry);
+        Preconditions.checkArgument(bufferSize >= Varints.MAX_LONG_BYTES);
+        this.out = out;
+        this.registry = registry;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Makes room for {@code n} bytes in the buffer.
+     */
+    private void reserve(int n) throws IOException {
+        if (buf.length - pos < n) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    public void writeByte(int b) throws IOException {
+        reserve(1);
+        buf[pos++] = (byte) b;
+    }
+
+    public void writeBoolean(boolean b) throws IOException {
+        writeByte(b ? 1 : 0);
+    }
+
+    /**
+     * Writes {@code n} as an unsigned varint. Negative values take the
+     * maximum 5 bytes; use {@link #writeSignedVarInt(int)} for them.
+     */
+    public void writeVarInt(int n) throws IOException {
+        writeVarLong(n & 0xFFFFFFFFL);
+    }
+
+    public void writeSignedVarInt(int n) throws IOException {
+        writeVarInt(Varints.zigZag(n));
+    }
+
+    public void writeVarLong(long n) throws IOException {
+        reserve(Varints.MAX_LONG_BYTES);
+        pos = Varints.write(n, buf, pos);
+    }
+
+    public void writeSignedVarLong(long n) throws IOException {
+        writeVarLong(Varints.zigZag(n));
+    }
+
+    public void writeInt(int n) throws IOException {
+        reserve(Integer.BYTES);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buf[pos++] = (byte) (n >>> shift);
+        }
+    }
+
+    public void writeLong(long n) throws IOException {
+        reserve(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[pos++] = (byte) (n >>> shift);
+        }
+    }
+
+    public void writeDouble(double d) throws IOException {
+        writeLong(Double.doubleToRawLongBits(d));
+    }
+
+    public void writeFloat(float f) throws IOException {
+        writeInt(Float.floatToRawIntBits(f));
+    }
+
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+        Preconditions.checkPositionIndexes(offset, offset + length, b.length);
+        if (length > buf.length - pos) {
+            flushBuffer();
+            if (length > buf.length) {
+                out.write(b, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(b, offset, buf, pos, length);
+        pos += length;
+    }
+
+    /**
+     * Writes a non-null string as its UTF-8 byte length followed by its
+     * UTF-8 bytes. ASCII strings are copied into the buffer directly, without
+     * an intermediate {@code byte[]}.
+     */
+    public void writeString(String s) throws IOException {
+        Preconditions.checkNotNull(s);
+        final int length = s.length();
+        if (length <= buf.length - Varints.MAX_INT_BYTES) {
+            reserve(Varints.MAX_INT_BYTES + length);
+            final int start = pos;
+            pos = Varints.write(length, buf, pos);
+            int i = 0;
+            for (; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                buf[pos++] = (byte) c;
+            }
+            if (i == length) {
+                return;
+            }
+            pos = start;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(utf8.length);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Writes {@code value} (which may be {@code null}) as its registered tag
+     * followed by its codec's encoding. Values of unregistered types are
+     * written with Java serialization.
+     *
+     * @throws NotSerializableException if {@code value}'s type is not
+     *                                  registered and is not
+     *                                  {@link Serializable}
+     */
+    public void writeObject(Object value) throws IOException {
+        if (value == null) {
+            writeVarInt(CodecRegistry.TAG_NULL);
+            return;
+        }
+        CodecRegistry.Entry<Object> entry = registry.entry(value.getClass());
+        if (entry != null) {
+            writeVarInt(entry.tag);
+            entry.codec.encode(value, this);
+            return;
+        }
+        if (!(value instanceof Serializable)) {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(value);
+        }
+        writeVarInt(CodecRegistry.TAG_SERIALIZABLE);
+        writeVarInt(bytes.size());
+        writeBytes(bytes.toByteArray(), 0, bytes.size());
+    }
+}
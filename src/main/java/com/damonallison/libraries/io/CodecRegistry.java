@@ -0,0 +1,287 @@
+package com.damonallison.libraries.io;
+
+import com.damonallison.classes.generics.Pair;
+import com.damonallison.classes.inheritance.Bike;
+import com.damonallison.classes.inheritance.MountainBike;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps value types to the {@link ObjectCodec}s which encode them, and the
+ * numeric tags which identify them in a stream.
+ * <p>
+ * Types are matched exactly: a subclass of a registered type (i.e.,
+ * {@link com.damonallison.classes.generics.SuperPair}) is not encoded with its
+ * superclass's codec, since decoding would lose the subclass. Values of
+ * unregistered types fall back to Java serialization.
+ * <p>
+ * Every registry includes codecs for {@code String}, the boxed primitives,
+ * {@link Pair}, {@link Bike} and {@link MountainBike}. Additional codecs are
+ * registered with {@link #newBuilder()}, using tags of
+ * {@link #FIRST_USER_TAG} or above. The same tags must be used to read a
+ * stream as were used to write it.
+ */
+public final class CodecRegistry {
+
+    static final int TAG_NULL = 0;
+    static final int TAG_SERIALIZABLE = 1;
+    static final int TAG_STRING = 2;
+    static final int TAG_INTEGER = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_DOUBLE = 5;
+    static final int TAG_FLOAT = 6;
+    static final int TAG_SHORT = 7;
+    static final int TAG_BYTE = 8;
+    static final int TAG_BOOLEAN = 9;
+    static final int TAG_PAIR = 10;
+    static final int TAG_BIKE = 11;
+    static final int TAG_MOUNTAIN_BIKE = 12;
+
+    /**
+     * Tags below this value are reserved for the built in codecs.
+     */
+    public static final int FIRST_USER_TAG = 32;
+
+    /**
+     * Tags are written as varints. Keeping them below this value keeps them
+     * to at most two bytes, and keeps the decode table small.
+     */
+    public static final int MAX_TAG = 16383;
+
+    /**
+     * {@code Pair.class} is a {@code Class<Pair>} (a raw type), since class
+     * literals can't be parameterized. The cast is safe: every {@code Pair}
+     * is a {@code Pair<?, ?>}.
+     */
+    @SuppressWarnings("unchecked")
+    private static final Class<Pair<?, ?>> PAIR = (Class<Pair<?, ?>>) (Class<?>) Pair.class;
+
+    private static final CodecRegistry DEFAULTS = newBuilder().build();
+
+    private final Map<Class<?>, Entry<?>> byType;
+    private final ObjectCodec<?>[] byTag;
+
+    private CodecRegistry(Map<Class<?>, Entry<?>> byType) {
+        this.byType = new HashMap<>(byType);
+        int maxTag = 0;
+        for (Entry<?> entry : byType.values()) {
+            maxTag = Math.max(maxTag, entry.tag);
+        }
+        this.byTag = new ObjectCodec<?>[maxTag + 1];
+        for (Entry<?> entry : byType.values()) {
+            byTag[entry.tag] = entry.codec;
+        }
+    }
+
+    /**
+     * @return a registry containing only the built in codecs.
+     */
+    public static CodecRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    @SuppressWarnings("unchecked")
+    Entry<Object> entry(Class<?> type) {
+        return (Entry<Object>) byType.get(type);
+    }
+
+    ObjectCodec<?> codec(int tag) {
+        return tag >= 0 && tag < byTag.length ? byTag[tag] : null;
+    }
+
+    static final class Entry<T> {
+        final int tag;
+        final ObjectCodec<T> codec;
+
+        Entry(int tag, ObjectCodec<T> codec) {
+            this.tag = tag;
+            this.codec = codec;
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final Map<Class<?>, Entry<?>> byType = new HashMap<>();
+        private final boolean[] used = new boolean[MAX_TAG + 1];
+
+        private Builder() {
+            used[TAG_NULL] = true;
+            used[TAG_SERIALIZABLE] = true;
+            add(TAG_STRING, String.class, new ObjectCodec<String>() {
+                @Override
+                public void encode(String value, CodecOutput out) throws IOException {
+                    out.writeString(value);
+                }
+
+                @Override
+                public String decode(CodecInput in) throws IOException {
+                    return in.readString();
+                }
+            });
+            add(TAG_INTEGER, Integer.class, new ObjectCodec<Integer>() {
+                @Override
+                public void encode(Integer value, CodecOutput out) throws IOException {
+                    out.writeSignedVarInt(value);
+                }
+
+                @Override
+                public Integer decode(CodecInput in) throws IOException {
+                    return in.readSignedVarInt();
+                }
+            });
+            add(TAG_LONG, Long.class, new ObjectCodec<Long>() {
+                @Override
+                public void encode(Long value, CodecOutput out) throws IOException {
+                    out.writeSignedVarLong(value);
+                }
+
+                @Override
+                public Long decode(CodecInput in) throws IOException {
+                    return in.readSignedVarLong();
+                }
+            });
+            add(TAG_DOUBLE, Double.class, new ObjectCodec<Double>() {
+                @Override
+                public void encode(Double value, CodecOutput out) throws IOException {
+                    out.writeDouble(value);
+                }
+
+                @Override
+                public Double decode(CodecInput in) throws IOException {
+                    return in.readDouble();
+                }
+            });
+            add(TAG_FLOAT, Float.class, new ObjectCodec<Float>() {
+                @Override
+                public void encode(Float value, CodecOutput out) throws IOException {
+                    out.writeFloat(value);
+                }
+
+                @Override
+                public Float decode(CodecInput in) throws IOException {
+                    return in.readFloat();
+                }
+            });
+            add(TAG_SHORT, Short.class, new ObjectCodec<Short>() {
+                @Override
+                public void encode(Short value, CodecOutput out) throws IOException {
+                    out.writeSignedVarInt(value);
+                }
+
+                @Override
+                public Short decode(CodecInput in) throws IOException {
+                    return (short) in.readSignedVarInt();
+                }
+            });
+            add(TAG_BYTE, Byte.class, new ObjectCodec<Byte>() {
+                @Override
+                public void encode(Byte value, CodecOutput out) throws IOException {
+                    out.writeByte(value);
+                }
+
+                @Override
+                public Byte decode(CodecInput in) throws IOException {
+                    return in.readByte();
+                }
+            });
+            add(TAG_BOOLEAN, Boolean.class, new ObjectCodec<Boolean>() {
+                @Override
+                public void encode(Boolean value, CodecOutput out) throws IOException {
+                    out.writeBoolean(value);
+                }
+
+                @Override
+                public Boolean decode(CodecInput in) throws IOException {
+                    return in.readBoolean();
+                }
+            });
+            add(TAG_PAIR, PAIR, new ObjectCodec<Pair<?, ?>>() {
+                @Override
+                public void encode(Pair<?, ?> value, CodecOutput out) throws IOException {
+                    out.writeObject(value.getKey());
+                    out.writeObject(value.getValue());
+                }
+
+                @Override
+                public Pair<?, ?> decode(CodecInput in) throws IOException {
+                    Object key = in.readObject();
+                    return new Pair<>(key, in.readObject());
+                }
+            });
+            add(TAG_BIKE, Bike.class, new ObjectCodec<Bike>() {
+                @Override
+                public void encode(Bike value, CodecOutput out) throws IOException {
+                    out.writeVarInt(value.getSpeed());
+                    out.writeVarInt(value.getGear());
+                    out.writeVarInt(value.getWheelCount());
+                }
+
+                @Override
+                public Bike decode(CodecInput in) throws IOException {
+                    return Bike.BikeBuilder.newBuilder()
+                            .setSpeed(in.readVarInt())
+                            .setGear(in.readVarInt())
+                            .setWheelCount(in.readVarInt())
+                            .build();
+                }
+            });
+            add(TAG_MOUNTAIN_BIKE, MountainBike.class, new ObjectCodec<MountainBike>() {
+                @Override
+                public void encode(MountainBike value, CodecOutput out) throws IOException {
+                    out.writeVarInt(value.getSpeed());
+                    out.writeVarInt(value.getGear());
+                    out.writeVarInt(value.getWheelCount());
+                    out.writeVarInt(value.getMaxElevation());
+                }
+
+                @Override
+                public MountainBike decode(CodecInput in) throws IOException {
+                    MountainBike.MountainBikeBuilder builder = MountainBike.MountainBikeBuilder.newBuilder();
+                    builder.setSpeed(in.readVarInt())
+                            .setGear(in.readVarInt())
+                            .setWheelCount(in.readVarInt());
+                    return builder.setMaxElevation(in.readVarInt()).build();
+                }
+            });
+        }
+
+        /**
+         * Registers {@code codec} for values whose class is exactly
+         * {@code type}, replacing any codec previously registered for it.
+         *
+         * @param tag identifies {@code type} in the stream. Must be between
+         *            {@link #FIRST_USER_TAG} and {@link #MAX_TAG}, and unique
+         *            within the registry.
+         */
+        public <T> Builder register(int tag, Class<T> type, ObjectCodec<T> codec) {
+            Preconditions.checkArgument(tag >= FIRST_USER_TAG && tag <= MAX_TAG,
+                    "tag must be between %s and %s", FIRST_USER_TAG, MAX_TAG);
+            return add(tag, type, codec);
+        }
+
+        private <T> Builder add(int tag, Class<T> type, ObjectCodec<T> codec) {
+            Preconditions.checkNotNull(type);
+            Preconditions.checkNotNull(codec);
+            Entry<?> previous = byType.get(type);
+            if (previous == null || previous.tag != tag) {
+                Preconditions.checkArgument(!used[tag], "tag %s is already registered", tag);
+            }
+            if (previous != null) {
+                used[previous.tag] = false;
+            }
+            used[tag] = true;
+            byType.put(type, new Entry<>(tag, codec));
+            return this;
+        }
+
+        public CodecRegistry build() {
+            return new CodecRegistry(byType);
+        }
+    }
+}
@@ -0,0 +1,721 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * A versioned, columnar binary file holding a list of string headers and a
+ * column of {@code int}, {@code long} or {@code double} values.
+ * <p>
+ * The file has three parts:
+ * <pre>
+ * header block
+ *   int    MAGIC
+ *   short  VERSION (or DICTIONARY_VERSION)
+ *   int    header count
+ *   UTF    header (x header count, see DataOutput#writeUTF)
+ *     or, for DICTIONARY_VERSION
+ *   int    dictionary size
+ *   UTF    unique header (x dictionary size)
+ *   block  header codes (IntEncoding blocks, x header count)
+ * column
+ *   byte   column type (TYPE_INT, TYPE_LONG, TYPE_DOUBLE or TYPE_INT_ENCODED)
+ *   int    value count
+ *   value  (x value count, 4 or 8 bytes each)
+ *     or
+ *   block  (TYPE_INT_ENCODED, up to the footer; see IntEncoding)
+ * footer (FOOTER_SIZE bytes, at the end of the file)
+ *   int    header count
+ *   int    value count
+ *   long   offset of the header block
+ *   long   offset of the column
+ *   int    MAGIC
+ * </pre>
+ * All values are big endian, so the header block and column can also be read
+ * sequentially with a {@link DataInputStream}.
+ * <p>
+ * The column is written in bulk: values are copied into a direct buffer thru
+ * {@link ByteBuffer#asIntBuffer()} (or {@code asLongBuffer} /
+ * {@code asDoubleBuffer}) a buffer at a time, rather than with one
+ * {@code writeInt} call per value. Values are never boxed. Reading is the
+ * reverse: {@link #open(Path)} memory-maps the column and {@link #values()}
+ * returns an {@link IntBuffer} view of it, so values are never decoded one by
+ * one.
+ * <p>
+ * Headers which repeat are dictionary encoded: each unique header is written
+ * once, and each header is written as its (small, bit-packed) index into the
+ * dictionary. The writer only uses a dictionary when it is smaller, and files
+ * without one keep {@link #VERSION} so older readers can still open them.
+ * Readers can work with the codes directly ({@link #headerCodes()}), so
+ * grouping and filtering by header compares {@code int}s, not strings.
+ * <p>
+ * Files can optionally be written thru a {@link BlockCompressedOutputStream}.
+ * {@link #open(Path)} recognizes compressed files and decompresses them.
+ * <p>
+ * {@code int} columns can also be written with {@link #writeEncoded}, which
+ * stores blocks of values as varints, deltas or bit-packed offsets (whichever
+ * is smallest for the block, see {@link IntEncoding}). Small, sorted or slowly
+ * changing values take a fraction of their fixed 4 bytes. Encoded columns are
+ * decoded into memory when the file is opened.
+ */
+public final class ColumnarFile {
+
+    /**
+     * "DCOL"
+     */
+    static final int MAGIC = 0x44434F4C;
+    static final short VERSION = 1;
+
+    /**
+     * The version of files with dictionary encoded headers.
+     */
+    static final short DICTIONARY_VERSION = 2;
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_LONG = 2;
+    static final byte TYPE_DOUBLE = 3;
+    static final byte TYPE_INT_ENCODED = 4;
+    static final int FOOTER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    /**
+     * The offset of the value count within the column.
+     */
+    private static final int COUNT_OFFSET = 1;
+    private static final int COLUMN_HEADER_SIZE = 1 + Integer.BYTES;
+
+    private final short version;
+    private final List<String> headers;
+    private final List<String> dictionary;
+    private final IntBuffer headerCodes;
+    private final byte type;
+    private final int valueCount;
+    private final ByteBuffer column;
+
+    /**
+     * The decoded values of a {@link #TYPE_INT_ENCODED} column.
+     */
+    private final IntBuffer decoded;
+
+    private ColumnarFile(short version, List<String> headers, List<String> dictionary,
+                         IntBuffer headerCodes, byte type, int valueCount,
+                         ByteBuffer column, IntBuffer decoded) {
+        this.version = version;
+        this.headers = headers;
+        this.dictionary = dictionary;
+        this.headerCodes = headerCodes;
+        this.type = type;
+        this.valueCount = valueCount;
+        this.column = column;
+        this.decoded = decoded;
+    }
+
+    /**
+     * Copies values into a buffer for writing.
+     */
+    private interface Column {
+        /**
+         * Copies as many of the remaining values as fit into {@code buf}.
+         *
+         * @return {@code false} once all values have been copied
+         */
+        boolean fill(ByteBuffer buf);
+    }
+
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} to
+     * {@code out}. The position of {@code values} is not changed.
+     */
+    public static void write(Path out, List<String> headers, IntBuffer values) throws IOException {
+        write(out, headers, values, null);
+    }
+
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} to
+     * {@code out}, block compressed with {@code compression}. The position of
+     * {@code values} is not changed.
+     *
+     * @param compression the compression settings, or {@code null} to write
+     *                    an uncompressed file
+     */
+    public static void write(Path out, List<String> headers, IntBuffer values,
+                             BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(values);
+        final IntBuffer src = values.duplicate();
+        write(out, headers, TYPE_INT, src.remaining(), compression, buf -> {
+            IntBuffer dst = buf.asIntBuffer();
+            int n = Math.min(dst.remaining(), src.remaining());
+            IntBuffer chunk = src.slice();
+            chunk.limit(n);
+            dst.put(chunk);
+            src.position(src.position() + n);
+            buf.position(buf.position() + n * Integer.BYTES);
+            return src.hasRemaining();
+        });
+    }
+
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} to
+     * {@code out}, encoding blocks of values with {@link IntEncoding}. The
+     * position of {@code values} is not changed.
+     */
+    public static void writeEncoded(Path out, List<String> headers, IntBuffer values) throws IOException {
+        writeEncoded(out, headers, values, null);
+    }
+
+    /**
+     * @see #writeEncoded(Path, List, IntBuffer)
+     * @see #write(Path, List, IntBuffer, BlockCompression)
+     */
+    public static void writeEncoded(Path out, List<String> headers, IntBuffer values,
+                                    BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(values);
+        final IntBuffer src = values.duplicate();
+        final IntEncoding encoding = new IntEncoding();
+        final int[] block = new int[IntEncoding.BLOCK_VALUES];
+        write(out, headers, TYPE_INT_ENCODED, src.remaining(), compression, buf -> {
+            while (src.hasRemaining() && buf.remaining() >= IntEncoding.MAX_BLOCK_BYTES) {
+                int n = Math.min(block.length, src.remaining());
+                src.get(block, 0, n);
+                encoding.encode(block, n, buf);
+            }
+            return src.hasRemaining();
+        });
+    }
+
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} to
+     * {@code out}. The position of {@code values} is not changed.
+     */
+    public static void write(Path out, List<String> headers, LongBuffer values) throws IOException {
+        write(out, headers, values, null);
+    }
+
+    /**
+     * @see #write(Path, List, IntBuffer, BlockCompression)
+     */
+    public static void write(Path out, List<String> headers, LongBuffer values,
+                             BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(values);
+        final LongBuffer src = values.duplicate();
+        write(out, headers, TYPE_LONG, src.remaining(), compression, buf -> {
+            LongBuffer dst = buf.asLongBuffer();
+            int n = Math.min(dst.remaining(), src.remaining());
+            LongBuffer chunk = src.slice();
+            chunk.limit(n);
+            dst.put(chunk);
+            src.position(src.position() + n);
+            buf.position(buf.position() + n * Long.BYTES);
+            return src.hasRemaining();
+        });
+    }
+
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} to
+     * {@code out}. The position of {@code values} is not changed.
+     */
+    public static void write(Path out, List<String> headers, DoubleBuffer values) throws IOException {
+        write(out, headers, values, null);
+    }
+
+    /**
+     * @see #write(Path, List, IntBuffer, BlockCompression)
+     */
+    public static void write(Path out, List<String> headers, DoubleBuffer values,
+                             BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(values);
+        final DoubleBuffer src = values.duplicate();
+        write(out, headers, TYPE_DOUBLE, src.remaining(), compression, buf -> {
+            DoubleBuffer dst = buf.asDoubleBuffer();
+            int n = Math.min(dst.remaining(), src.remaining());
+            DoubleBuffer chunk = src.slice();
+            chunk.limit(n);
+            dst.put(chunk);
+            src.position(src.position() + n);
+            buf.position(buf.position() + n * Double.BYTES);
+            return src.hasRemaining();
+        });
+    }
+
+    /**
+     * Writes {@code headers} and every value in {@code values} to
+     * {@code out}. The stream is consumed as it is written; its values are
+     * never collected into an array.
+     * <p>
+     * The value count is only known once the stream has been consumed, and
+     * is then written back into the column header. Compressed files can't be
+     * patched, so there is no compressed variant.
+     */
+    public static void write(Path out, List<String> headers, IntStream values) throws IOException {
+        Preconditions.checkNotNull(values);
+        final PrimitiveIterator.OfInt src = values.iterator();
+        write(out, headers, TYPE_INT, -1, null, buf -> {
+            while (buf.remaining() >= Integer.BYTES) {
+                if (!src.hasNext()) {
+                    return false;
+                }
+                buf.putInt(src.nextInt());
+            }
+            return src.hasNext();
+        });
+    }
+
+    /**
+     * @param count the number of values, or {@code -1} if unknown. An unknown
+     *              count is patched in after the values are written, which
+     *              requires an uncompressed file. Encoded columns must have a
+     *              known count.
+     */
+    private static void write(Path out, List<String> headers, byte type, int count,
+                              BlockCompression compression, Column values) throws IOException {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkArgument(count >= 0 || (compression == null && type != TYPE_INT_ENCODED));
+
+        final FileChannel file = compression == null
+                ? FileChannel.open(out,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)
+                : null;
+        try (WritableByteChannel channel = file != null
+                ? file
+                : Channels.newChannel(new BlockCompressedOutputStream(Files.newOutputStream(out), compression))) {
+
+            // The stream is not closed: closing it would close the channel.
+            final DataOutputStream header = new DataOutputStream(new BufferedOutputStream(
+                    uncloseable(Channels.newOutputStream(channel)), IOUtilities.DEFAULT_BUFFER_SIZE));
+            header.writeInt(MAGIC);
+            writeHeaders(header, headers);
+            header.flush();
+
+            final long columnOffset = header.size();
+            long position = columnOffset;
+            ByteBuffer buf = IOUtilities.BUFFER_POOL.acquire(IOUtilities.DEFAULT_BUFFER_SIZE);
+            try {
+                buf.order(ByteOrder.BIG_ENDIAN);
+                buf.put(type).putInt(Math.max(count, 0));
+
+                boolean more;
+                do {
+                    more = values.fill(buf);
+                    position += writeFully(channel, buf);
+                } while (more);
+
+                final long valueBytes = position - columnOffset - COLUMN_HEADER_SIZE;
+                final long written = count >= 0 ? count : valueBytes / width(type);
+                Preconditions.checkArgument(written <= Integer.MAX_VALUE,
+                        "at most Integer.MAX_VALUE values can be written, got %s", written);
+
+                buf.putInt(headers.size())
+                        .putInt((int) written)
+                        .putLong(0L)
+                        .putLong(columnOffset)
+                        .putInt(MAGIC);
+                writeFully(channel, buf);
+
+                if (count < 0) {
+                    buf.putInt((int) written).flip();
+                    while (buf.hasRemaining()) {
+                        file.write(buf, columnOffset + COUNT_OFFSET + buf.position());
+                    }
+                    buf.clear();
+                }
+            } finally {
+                IOUtilities.BUFFER_POOL.release(buf);
+            }
+        }
+    }
+
+    /**
+     * Writes the version and {@code headers}, dictionary encoding them if
+     * that is smaller than writing each one in full.
+     */
+    private static void writeHeaders(DataOutputStream out, List<String> headers) throws IOException {
+        final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        final int[] codes = new int[headers.size()];
+        long plainBytes = 0;
+        long dictionaryBytes = Integer.BYTES;
+        for (int i = 0; i < codes.length; i++) {
+            final String h = headers.get(i);
+            Integer code = dictionary.get(h);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(h, code);
+                dictionaryBytes += utfLength(h);
+            }
+            codes[i] = code;
+            plainBytes += utfLength(h);
+        }
+        if (!dictionary.isEmpty()) {
+            final int width = 32 - Integer.numberOfLeadingZeros(dictionary.size() - 1);
+            dictionaryBytes += ((long) codes.length * width + 7) / 8;
+        }
+
+        if (dictionaryBytes >= plainBytes) {
+            out.writeShort(VERSION);
+            out.writeInt(headers.size());
+            for (String h : headers) {
+                out.writeUTF(h);
+            }
+            return;
+        }
+        out.writeShort(DICTIONARY_VERSION);
+        out.writeInt(headers.size());
+        out.writeInt(dictionary.size());
+        for (String h : dictionary.keySet()) {
+            out.writeUTF(h);
+        }
+        final IntEncoding encoding = new IntEncoding();
+        final int[] block = new int[IntEncoding.BLOCK_VALUES];
+        final ByteBuffer buf = ByteBuffer.allocate(IntEncoding.MAX_BLOCK_BYTES);
+        for (int i = 0; i < codes.length; i += block.length) {
+            final int n = Math.min(block.length, codes.length - i);
+            System.arraycopy(codes, i, block, 0, n);
+            encoding.encode(block, n, buf);
+            out.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link DataOutputStream#writeUTF} writes
+     * for {@code s}.
+     */
+    private static long utfLength(String s) {
+        long length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the buffered bytes in {@code buf} and clears it.
+     *
+     * @return the number of bytes written
+     */
+    private static int writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        final int n = buf.remaining();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+        return n;
+    }
+
+    /**
+     * @return the size of a single value of {@code type}, in bytes.
+     */
+    private static int width(byte type) {
+        switch (type) {
+            case TYPE_INT:
+                return Integer.BYTES;
+            case TYPE_LONG:
+                return Long.BYTES;
+            case TYPE_DOUBLE:
+                return Double.BYTES;
+            default:
+                throw new IllegalArgumentException("unknown column type " + type);
+        }
+    }
+
+    private static OutputStream uncloseable(OutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Opens a file written by {@link #write}. The headers are read eagerly.
+     * <p>
+     * Uncompressed files are memory-mapped, and the values are read from the
+     * mapping. Block compressed files are decompressed (in parallel) into
+     * memory.
+     *
+     * @throws IOException if {@code in} is not a columnar file, or was
+     *                     written by a newer version of this class
+     */
+    public static ColumnarFile open(Path in) throws IOException {
+        Preconditions.checkNotNull(in);
+
+        if (BlockCompressedFile.isBlockCompressed(in)) {
+            try (BlockCompressedFile compressed = BlockCompressedFile.open(in)) {
+                return parse(in, ByteBuffer.wrap(compressed.readFully()).asReadOnlyBuffer());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(in + " is too large to map as a single buffer");
+            }
+            return parse(in, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private static ColumnarFile parse(Path in, ByteBuffer file) throws IOException {
+        final int size = file.limit();
+        if (size < FOOTER_SIZE) {
+            throw new IOException(in + " is not a columnar file (too small)");
+        }
+        ByteBuffer footer = file.duplicate().position(size - FOOTER_SIZE);
+        final int headerCount = footer.getInt();
+        final int valueCount = footer.getInt();
+        final long headerOffset = footer.getLong();
+        final long columnOffset = footer.getLong();
+        if (footer.getInt() != MAGIC) {
+            throw new IOException(in + " is not a columnar file (bad footer)");
+        }
+        if (headerOffset < 0 || headerOffset > columnOffset || columnOffset + COLUMN_HEADER_SIZE > size - FOOTER_SIZE) {
+            throw new IOException(in + " is corrupt (bad offsets)");
+        }
+
+        // DataInputStream doesn't buffer, so headerBlock is positioned just
+        // after the last value read.
+        final ByteBuffer headerBlock = file.duplicate().position((int) headerOffset).limit((int) columnOffset);
+        final DataInputStream header = new DataInputStream(new ByteBufferInputStream(headerBlock));
+        if (header.readInt() != MAGIC) {
+            throw new IOException(in + " is not a columnar file (bad header)");
+        }
+        final short version = header.readShort();
+        if (version > DICTIONARY_VERSION) {
+            throw new IOException(String.format(
+                    "%s has version %d, only versions <= %d are supported", in, version, DICTIONARY_VERSION));
+        }
+        if (header.readInt() != headerCount) {
+            throw new IOException(in + " is corrupt (header count mismatch)");
+        }
+        final List<String> dictionary;
+        final int[] codes;
+        if (version >= DICTIONARY_VERSION) {
+            final int dictionarySize = header.readInt();
+            if (dictionarySize < 0 || dictionarySize > headerCount) {
+                throw new IOException(in + " is corrupt (bad dictionary size)");
+            }
+            dictionary = new ArrayList<>(dictionarySize);
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary.add(header.readUTF());
+            }
+            codes = decode(in, headerBlock, headerCount).array();
+            for (int code : codes) {
+                if (code < 0 || code >= dictionarySize) {
+                    throw new IOException(in + " is corrupt (bad header code " + code + ")");
+                }
+            }
+        } else {
+            final Map<String, Integer> unique = new HashMap<>();
+            dictionary = new ArrayList<>();
+            codes = new int[headerCount];
+            for (int i = 0; i < headerCount; i++) {
+                final String h = header.readUTF();
+                Integer code = unique.get(h);
+                if (code == null) {
+                    code = dictionary.size();
+                    unique.put(h, code);
+                    dictionary.add(h);
+                }
+                codes[i] = code;
+            }
+        }
+        final List<String> unmodifiableDictionary = Collections.unmodifiableList(dictionary);
+        final List<String> headers = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return unmodifiableDictionary.get(codes[index]);
+            }
+
+            @Override
+            public int size() {
+                return codes.length;
+            }
+        };
+
+        ByteBuffer column = file.duplicate().position((int) columnOffset);
+        final byte type = column.get();
+        if (type != TYPE_INT && type != TYPE_LONG && type != TYPE_DOUBLE && type != TYPE_INT_ENCODED) {
+            throw new IOException(in + " has unknown column type " + type);
+        }
+        if (column.getInt() != valueCount) {
+            throw new IOException(in + " is corrupt (column count mismatch)");
+        }
+        if (type == TYPE_INT_ENCODED) {
+            column.limit(size - FOOTER_SIZE);
+            return new ColumnarFile(version, headers, unmodifiableDictionary, IntBuffer.wrap(codes), type,
+                    valueCount, null, decode(in, column.slice().order(ByteOrder.BIG_ENDIAN), valueCount));
+        }
+        final long valueBytes = (long) valueCount * width(type);
+        if (columnOffset + COLUMN_HEADER_SIZE + valueBytes > size - FOOTER_SIZE) {
+            throw new IOException(in + " is corrupt (column extends past footer)");
+        }
+        column.limit((int) (column.position() + valueBytes));
+        return new ColumnarFile(version, headers, unmodifiableDictionary, IntBuffer.wrap(codes), type,
+                valueCount, column.slice().order(ByteOrder.BIG_ENDIAN), null);
+    }
+
+    /**
+     * Decodes the remaining {@link IntEncoding} blocks in {@code blocks},
+     * which must hold exactly {@code valueCount} values.
+     */
+    private static IntBuffer decode(Path in, ByteBuffer blocks, int valueCount) throws IOException {
+        // Even the smallest block holds at most BLOCK_VALUES values.
+        if (valueCount < 0 || (long) valueCount > (long) blocks.remaining() * IntEncoding.BLOCK_VALUES) {
+            throw new IOException(in + " is corrupt (bad value count)");
+        }
+        final IntEncoding encoding = new IntEncoding();
+        final int[] values = new int[valueCount];
+        int n = 0;
+        try {
+            while (n < valueCount) {
+                n += encoding.decode(blocks, values, n);
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(in + " is corrupt (bad encoded block)", e);
+        }
+        if (blocks.hasRemaining()) {
+            throw new IOException(in + " is corrupt (trailing bytes after encoded values)");
+        }
+        return IntBuffer.wrap(values);
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+
+    /**
+     * @return the format version the file was written with.
+     */
+    public short version() {
+        return version;
+    }
+
+    /**
+     * @return the headers, in the order they were written.
+     */
+    public List<String> headers() {
+        return headers;
+    }
+
+    /**
+     * @return each unique header, in the order it first appears.
+     * {@code headers().get(i)} is
+     * {@code dictionary().get(headerCodes().get(i))}.
+     */
+    public List<String> dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return a read-only view of each header's index into
+     * {@link #dictionary()}. Two headers are equal if and only if their codes
+     * are equal.
+     */
+    public IntBuffer headerCodes() {
+        return headerCodes.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the number of values in the column.
+     */
+    public int valueCount() {
+        return valueCount;
+    }
+
+    /**
+     * @return a read-only view of the values. Each call returns an
+     * independent view, positioned at the first value.
+     * @throws IllegalStateException if the column does not hold {@code int}s
+     */
+    public IntBuffer values() {
+        if (type == TYPE_INT_ENCODED) {
+            return decoded.asReadOnlyBuffer();
+        }
+        checkType(TYPE_INT, "int");
+        return column.asIntBuffer();
+    }
+
+    /**
+     * @see #values()
+     */
+    public LongBuffer longValues() {
+        checkType(TYPE_LONG, "long");
+        return column.asLongBuffer();
+    }
+
+    /**
+     * @see #values()
+     */
+    public DoubleBuffer doubleValues() {
+        checkType(TYPE_DOUBLE, "double");
+        return column.asDoubleBuffer();
+    }
+
+    private void checkType(byte expected, String name) {
+        Preconditions.checkState(type == expected, "column does not hold %s values", name);
+    }
+}
@@ -0,0 +1,77 @@
+package com.damonallison.libraries.io;
+
+/**
+ * Settings for the byte level copies in {@link IOUtilities}.
+ * <p>
+ * By default, copies only move bytes. With {@link Builder#setChecksum}, a
+ * CRC32C checksum is computed inline as each buffer passes through the copy,
+ * so the source is never read a second time. With {@link Builder#setVerify},
+ * the destination is read back after the copy and its checksum compared to
+ * the source's.
+ *
+ * @see CopyResult
+ */
+public final class CopyOptions {
+
+    private static final CopyOptions DEFAULTS = newBuilder().build();
+
+    private final boolean checksum;
+    private final boolean verify;
+
+    private CopyOptions(boolean checksum, boolean verify) {
+        this.checksum = checksum;
+        this.verify = verify;
+    }
+
+    /**
+     * @return options which neither checksum nor verify.
+     */
+    public static CopyOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public boolean isChecksum() {
+        return checksum;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private boolean checksum;
+        private boolean verify;
+
+        private Builder() {
+        }
+
+        /**
+         * Computes a CRC32C checksum of the source as it is copied. Copies
+         * which would otherwise let the OS move the data without it passing
+         * through a buffer (i.e., {@link IOUtilities#byteCopy}) copy through
+         * a buffer instead.
+         */
+        public Builder setChecksum(boolean checksum) {
+            this.checksum = checksum;
+            return this;
+        }
+
+        /**
+         * Reads the destination after the copy, failing the copy with an
+         * {@link java.io.IOException} if its size or checksum differs from
+         * the source's. Implies {@link #setChecksum}.
+         */
+        public Builder setVerify(boolean verify) {
+            this.verify = verify;
+            return this;
+        }
+
+        public CopyOptions build() {
+            return new CopyOptions(checksum || verify, verify);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The outcome of a copy made with {@link CopyOptions}: the number of bytes
+ * copied and, if requested, the CRC32C checksum of the copied bytes.
+ */
+public final class CopyResult {
+
+    /**
+     * Marks a result without a checksum. CRC32C values are unsigned 32 bit
+     * values, so are never negative.
+     */
+    private static final long NO_CHECKSUM = -1;
+
+    private final long bytes;
+    private final long checksum;
+    private final boolean verified;
+
+    CopyResult(long bytes, long checksum, boolean verified) {
+        this.bytes = bytes;
+        this.checksum = checksum;
+        this.verified = verified;
+    }
+
+    static CopyResult of(long bytes) {
+        return new CopyResult(bytes, NO_CHECKSUM, false);
+    }
+
+    /**
+     * @return the number of bytes copied.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public boolean hasChecksum() {
+        return checksum != NO_CHECKSUM;
+    }
+
+    /**
+     * @return the CRC32C checksum of the copied bytes, as returned by
+     * {@link java.util.zip.CRC32C#getValue()}.
+     * @throws IllegalStateException if the copy wasn't checksummed
+     */
+    public long getChecksum() {
+        Preconditions.checkState(hasChecksum(), "the copy was not checksummed");
+        return checksum;
+    }
+
+    /**
+     * @return {@code true} if the destination was read back after the copy
+     * and matched the source's size and checksum.
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    CopyResult verified() {
+        return new CopyResult(bytes, checksum, true);
+    }
+
+    @Override
+    public String toString() {
+        return hasChecksum()
+                ? String.format("CopyResult{bytes=%d, crc32c=%08x, verified=%s}", bytes, checksum, verified)
+                : String.format("CopyResult{bytes=%d}", bytes);
+    }
+}
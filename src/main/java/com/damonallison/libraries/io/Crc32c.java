@@ -0,0 +1,137 @@
+package com.damonallison.libraries.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Helpers for computing {@link CRC32C} checksums of data as it is copied.
+ * <p>
+ * {@link CRC32C#update(ByteBuffer)} is compiled to the CPU's CRC32C
+ * instructions (SSE 4.2 on x86, the CRC extension on ARM), so checksumming a
+ * buffer costs far less than the I/O which filled it.
+ * <p>
+ * Copies which move chunks concurrently (or out of order) checksum each chunk
+ * separately. {@link #combine} then computes the checksum of the whole file
+ * from the chunk checksums and lengths, without touching the data again. This
+ * is zlib's {@code crc32_combine} using the CRC32C (Castagnoli) polynomial:
+ * appending {@code n} zero bits to a CRC is a linear operation over GF(2), so
+ * it is applied as a 32x32 bit matrix raised to the {@code n}th power by
+ * repeated squaring.
+ */
+final class Crc32c {
+
+    /**
+     * The reversed Castagnoli polynomial.
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    private Crc32c() {
+    }
+
+    /**
+     * Adds the remaining bytes of {@code buf} to {@code crc} without changing
+     * {@code buf}'s position.
+     */
+    static void update(CRC32C crc, ByteBuffer buf) {
+        final int position = buf.position();
+        crc.update(buf);
+        buf.position(position);
+    }
+
+    /**
+     * @return the checksum of the remaining bytes of {@code buf}.
+     * {@code buf}'s position is not changed.
+     */
+    static long checksum(ByteBuffer buf) {
+        CRC32C crc = new CRC32C();
+        update(crc, buf);
+        return crc.getValue();
+    }
+
+    /**
+     * Reads {@code channel} from its current position to end of stream,
+     * returning the checksum of the bytes read.
+     *
+     * @return the checksum and the number of bytes read, in a
+     * {@link CopyResult}
+     */
+    static CopyResult checksum(FileChannel channel) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buf = IOUtilities.BUFFER_POOL.acquire(IOUtilities.PARALLEL_BUFFER_SIZE);
+        try {
+            long total = 0;
+            int n;
+            while ((n = channel.read(buf)) != -1) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+                total += n;
+            }
+            return new CopyResult(total, crc.getValue(), false);
+        } finally {
+            IOUtilities.BUFFER_POOL.release(buf);
+        }
+    }
+
+    /**
+     * @return the checksum of the concatenation {@code A + B}, given the
+     * checksum of {@code A}, the checksum of {@code B} and the length of
+     * {@code B} in bytes.
+     */
+    static long combine(long crcA, long crcB, long lengthB) {
+        if (lengthB <= 0) {
+            return crcA;
+        }
+        int crc = (int) crcA;
+        int[] even = new int[32];
+        int[] odd = new int[32];
+
+        // The operator for one zero bit.
+        odd[0] = POLYNOMIAL;
+        int row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Two zero bits, then four. The loop starts at one zero byte.
+        square(even, odd);
+        square(odd, even);
+
+        long length = lengthB;
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+            length >>>= 1;
+            if (length == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+            length >>>= 1;
+        } while (length != 0);
+
+        return (crc ^ (int) crcB) & 0xFFFFFFFFL;
+    }
+
+    private static int times(int[] matrix, int vector) {
+        int sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(int[] square, int[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
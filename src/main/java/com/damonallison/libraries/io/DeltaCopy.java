@@ -0,0 +1,501 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
+
+/**
+ * Updates an existing copy of a file by rewriting only the blocks which have
+ * changed, in the spirit of rsync.
+ * <p>
+ * A full copy rewrites every byte of the destination, even when only a few
+ * blocks of a large file have changed. A delta copy works in three steps:
+ * <ol>
+ * <li>A {@link Signature} of the existing destination is computed: for each
+ * block, a cheap "weak" checksum (Adler-32, rsync's rolling checksum) and a
+ * "strong" hash (the first 128 bits of SHA-256).</li>
+ * <li>The source is read block by block. Its weak checksum is compared to the
+ * destination's block at the same offset; only when they match is the
+ * (slower) strong hash computed and compared.</li>
+ * <li>Blocks which don't match are written at their offset in the
+ * destination, which is then truncated to the source's size.</li>
+ * </ol>
+ * Unlike rsync, blocks are only matched at the same offset. rsync searches
+ * every offset of the source (rolling the weak checksum one byte at a time)
+ * so that shifted data needn't be sent over the network. When updating a
+ * file in place, shifted data must be written at its new offset regardless,
+ * so matching elsewhere can't save a write.
+ * <p>
+ * With {@link Builder#setCacheSignatures}, the destination's signature is
+ * kept in a sidecar file ({@link #sidecar(Path)}) and updated by each copy.
+ * The next copy then reads only the source, never the destination. Like
+ * rsync's "quick check", a cached signature is trusted if the destination's
+ * size and modification time haven't changed. A destination modified too
+ * recently for its modification time to be trusted (see {@link FileStamp})
+ * is waited out before its signature is cached, so each copy with cached
+ * signatures takes at least a few milliseconds.
+ */
+public final class DeltaCopy {
+
+    /**
+     * The default number of bytes per block. Smaller blocks write less for
+     * scattered changes, at the cost of a larger signature.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * "DSIG"
+     */
+    static final int MAGIC = 0x44534947;
+    static final int VERSION = 2;
+    static final String SIDECAR_SUFFIX = ".dsig";
+
+    private final int blockSize;
+    private final boolean cacheSignatures;
+
+    private DeltaCopy(int blockSize, boolean cacheSignatures) {
+        this.blockSize = blockSize;
+        this.cacheSignatures = cacheSignatures;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public boolean isCacheSignatures() {
+        return cacheSignatures;
+    }
+
+    /**
+     * @return the path of the sidecar file holding {@code file}'s cached
+     * signature.
+     */
+    public static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Updates {@code out} to be a copy of {@code in}, writing only the blocks
+     * which differ. If {@code out} doesn't exist, it is created and every
+     * block is written.
+     *
+     * @param in  the source file to copy from
+     * @param out the destination file to update
+     * @return the number of bytes copied and written
+     */
+    public Result copy(Path in, Path out) throws IOException {
+
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+
+        final IOMetrics.Operation op = IOMetrics.start("deltaCopy", blockSize);
+        try {
+            final Signature old = signature(out);
+            final Hasher hasher = new Hasher();
+            Signature updated = null;
+            long written = 0;
+            long changed = 0;
+            final long size;
+
+            ByteBuffer buf = IOUtilities.BUFFER_POOL.acquire(blockSize);
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ)) {
+                size = source.size();
+                // Check before the destination is created or changed.
+                final int blocks = blockCount(size, blockSize);
+                if (cacheSignatures) {
+                    updated = Signature.allocate(size, blockSize);
+                }
+                try (FileChannel target = FileChannel.open(out,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+                    for (int i = 0; i < blocks; i++) {
+                        final long position = (long) i * blockSize;
+                        final int length = (int) Math.min(blockSize, size - position);
+                        readFully(source, buf, position, length, op);
+
+                        final int weak = hasher.weak(buf);
+                        boolean same = false;
+                        long strongHigh = 0;
+                        long strongLow = 0;
+                        if (old.length(i) == length && old.weak[i] == weak) {
+                            hasher.strong(buf);
+                            strongHigh = hasher.high;
+                            strongLow = hasher.low;
+                            same = old.strong[2 * i] == strongHigh && old.strong[2 * i + 1] == strongLow;
+                        } else if (updated != null) {
+                            hasher.strong(buf);
+                            strongHigh = hasher.high;
+                            strongLow = hasher.low;
+                        }
+                        if (!same) {
+                            long offset = position;
+                            while (buf.hasRemaining()) {
+                                final long begin = op.begin();
+                                final int n = target.write(buf, offset);
+                                op.write(n, begin);
+                                offset += n;
+                            }
+                            written += length;
+                            changed++;
+                        }
+                        if (updated != null) {
+                            updated.set(i, weak, strongHigh, strongLow);
+                        }
+                    }
+                    if (target.size() > size) {
+                        target.truncate(size);
+                    }
+                }
+            } finally {
+                IOUtilities.BUFFER_POOL.release(buf);
+            }
+
+            if (updated != null) {
+                // Our writes just updated the modification time; wait until a
+                // change by someone else would update it again.
+                updated.stamp = FileStamp.settle(out);
+                if (updated.stamp.size == size) {
+                    updated.write(sidecar(out));
+                } else {
+                    Files.deleteIfExists(sidecar(out));
+                }
+            }
+            return new Result(size, written, changed);
+        } finally {
+            op.finish();
+        }
+    }
+
+    /**
+     * @return the number of blocks in a file of {@code size} bytes
+     * @throws IOException if there are too many blocks to index with an
+     *                     {@code int} (and to hold a signature of)
+     */
+    static int blockCount(long size, int blockSize) throws IOException {
+        final long blocks = (size + blockSize - 1) / blockSize;
+        if (blocks > (Integer.MAX_VALUE - 8) / 2) {
+            throw new IOException(String.format(
+                    "%d blocks is too many, use a larger block size", blocks));
+        }
+        return (int) blocks;
+    }
+
+    /**
+     * Reads {@code length} bytes at {@code position} into {@code buf}, leaving
+     * {@code buf} flipped (ready to be hashed / written).
+     */
+    private static void readFully(FileChannel source, ByteBuffer buf, long position, int length,
+                                  IOMetrics.Operation op) throws IOException {
+        buf.clear().limit(length);
+        while (buf.hasRemaining()) {
+            final long begin = op.begin();
+            final int n = source.read(buf, position + buf.position());
+            op.read(n, begin);
+            if (n < 0) {
+                throw new EOFException(String.format(
+                        "%d bytes expected at offset %d, file was truncated",
+                        buf.remaining(), position + buf.position()));
+            }
+        }
+        buf.flip();
+    }
+
+    /**
+     * Returns the signature of {@code out}: its cached signature if caching
+     * is enabled and the cache is current, otherwise one computed by reading
+     * {@code out}. A file which doesn't exist has an empty signature.
+     */
+    Signature signature(Path out) throws IOException {
+        if (!Files.exists(out)) {
+            return Signature.allocate(0, blockSize);
+        }
+        if (cacheSignatures && Files.exists(sidecar(out))) {
+            try {
+                Signature cached = Signature.read(sidecar(out));
+                if (cached.blockSize == blockSize && cached.stamp.matches(out)) {
+                    return cached;
+                }
+            } catch (IOException e) {
+                // Corrupt or from another version; recompute it.
+            }
+        }
+        return Signature.of(out, blockSize);
+    }
+
+    /**
+     * The weak checksum and strong hash of each block of a file.
+     */
+    static final class Signature {
+        final long size;
+        final int blockSize;
+        FileStamp stamp;
+        final int[] weak;
+
+        /**
+         * Two longs per block: the high and low 64 bits of the strong hash.
+         */
+        final long[] strong;
+
+        private Signature(long size, int blockSize, FileStamp stamp, int[] weak, long[] strong) {
+            this.size = size;
+            this.blockSize = blockSize;
+            this.stamp = stamp;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        static Signature allocate(long size, int blockSize) throws IOException {
+            final int blocks = blockCount(size, blockSize);
+            return new Signature(size, blockSize, new FileStamp(size, 0, 0),
+                    new int[blocks], new long[2 * blocks]);
+        }
+
+        /**
+         * Computes the signature of {@code file} by reading it.
+         */
+        static Signature of(Path file, int blockSize) throws IOException {
+            // Stamp before reading, so a file modified while it's read is stale.
+            final FileStamp stamp = FileStamp.of(file);
+            final Hasher hasher = new Hasher();
+            ByteBuffer buf = IOUtilities.BUFFER_POOL.acquire(blockSize);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                Signature signature = allocate(size, blockSize);
+                signature.stamp = stamp;
+                for (int i = 0; i < signature.weak.length; i++) {
+                    final long position = (long) i * blockSize;
+                    readFully(channel, buf, position, signature.length(i), IOMetrics.Operation.NOOP);
+                    final int weak = hasher.weak(buf);
+                    hasher.strong(buf);
+                    signature.set(i, weak, hasher.high, hasher.low);
+                }
+                return signature;
+            } finally {
+                IOUtilities.BUFFER_POOL.release(buf);
+            }
+        }
+
+        void set(int block, int weak, long strongHigh, long strongLow) {
+            this.weak[block] = weak;
+            this.strong[2 * block] = strongHigh;
+            this.strong[2 * block + 1] = strongLow;
+        }
+
+        /**
+         * @return the length of block {@code i}, or {@code -1} if the file
+         * has no such block.
+         */
+        int length(int i) {
+            if (i >= weak.length) {
+                return -1;
+            }
+            return (int) Math.min(blockSize, size - (long) i * blockSize);
+        }
+
+        /**
+         * Writes this signature to {@code path}.
+         * <pre>
+         * int    MAGIC
+         * int    VERSION
+         * long   file size
+         * long   file last modified time (nanos)
+         * long   time the file was stamped (nanos)
+         * int    block size
+         * int    block count
+         * (int weak, long strong high, long strong low) x block count
+         * </pre>
+         */
+        void write(Path path) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path), IOUtilities.DEFAULT_BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(stamp.modified);
+                out.writeLong(stamp.recorded);
+                out.writeInt(blockSize);
+                out.writeInt(weak.length);
+                for (int i = 0; i < weak.length; i++) {
+                    out.writeInt(weak[i]);
+                    out.writeLong(strong[2 * i]);
+                    out.writeLong(strong[2 * i + 1]);
+                }
+            }
+        }
+
+        /**
+         * @throws IOException if {@code path} is corrupt, or was written by
+         *                     another version of this class
+         */
+        static Signature read(Path path) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(path), IOUtilities.DEFAULT_BUFFER_SIZE))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path + " is not a delta copy signature");
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException(String.format("%s has version %d, only version %d is supported",
+                            path, version, VERSION));
+                }
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final long recorded = in.readLong();
+                final int blockSize = in.readInt();
+                final int blocks = in.readInt();
+                if (size < 0 || blockSize <= 0 || blocks != (size + blockSize - 1) / blockSize) {
+                    throw new IOException(path + " is corrupt");
+                }
+                Signature signature = allocate(size, blockSize);
+                signature.stamp = new FileStamp(size, modified, recorded);
+                for (int i = 0; i < blocks; i++) {
+                    signature.set(i, in.readInt(), in.readLong(), in.readLong());
+                }
+                if (in.read() != -1) {
+                    throw new IOException(path + " is corrupt (trailing bytes)");
+                }
+                return signature;
+            }
+        }
+    }
+
+    /**
+     * Computes block checksums, reusing the same {@link Adler32} and
+     * {@link MessageDigest} for every block.
+     */
+    private static final class Hasher {
+        private final Adler32 adler = new Adler32();
+        private final MessageDigest sha;
+        private final byte[] digest = new byte[32];
+        long high;
+        long low;
+
+        Hasher() {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @return the weak checksum of {@code buf}'s remaining bytes. The
+         * position is not changed.
+         */
+        int weak(ByteBuffer buf) {
+            final int position = buf.position();
+            adler.reset();
+            adler.update(buf);
+            buf.position(position);
+            return (int) adler.getValue();
+        }
+
+        /**
+         * Sets {@link #high} and {@link #low} to the strong hash of
+         * {@code buf}'s remaining bytes. The position is not changed.
+         */
+        void strong(ByteBuffer buf) {
+            final int position = buf.position();
+            sha.update(buf);
+            buf.position(position);
+            try {
+                sha.digest(digest, 0, digest.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            high = ByteBuffer.wrap(digest).getLong(0);
+            low = ByteBuffer.wrap(digest).getLong(8);
+        }
+    }
+
+    /**
+     * The outcome of a delta copy.
+     */
+    public static final class Result {
+        private final long bytes;
+        private final long bytesWritten;
+        private final long changedBlocks;
+
+        Result(long bytes, long bytesWritten, long changedBlocks) {
+            this.bytes = bytes;
+            this.bytesWritten = bytesWritten;
+            this.changedBlocks = changedBlocks;
+        }
+
+        /**
+         * @return the size of the source, which the destination now matches.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of bytes written to the destination.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * @return the number of blocks which differed and were written.
+         */
+        public long getChangedBlocks() {
+            return changedBlocks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Result{bytes=%d, bytesWritten=%d, changedBlocks=%d}",
+                    bytes, bytesWritten, changedBlocks);
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private boolean cacheSignatures;
+
+        private Builder() {
+        }
+
+        /**
+         * The number of bytes compared (and, if changed, written) at a time.
+         */
+        public Builder setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Keeps the destination's signature in a sidecar file, so the next
+         * copy to the same destination doesn't read it.
+         */
+        public Builder setCacheSignatures(boolean cacheSignatures) {
+            this.cacheSignatures = cacheSignatures;
+            return this;
+        }
+
+        public DeltaCopy build() {
+            Preconditions.checkArgument(blockSize > 0, "blockSize must be > 0");
+            return new DeltaCopy(blockSize, cacheSignatures);
+        }
+    }
+}
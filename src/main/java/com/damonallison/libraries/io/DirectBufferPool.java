@@ -0,0 +1,77 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread safe pool of direct {@link ByteBuffer}s.
+ * <p>
+ * Direct buffers live outside of the Java heap, which lets channels read /
+ * write them without an extra copy. They are expensive to allocate and are
+ * only freed when the GC collects the buffer object, so allocating a new one
+ * per copy creates GC churn. This pool keeps released buffers (grouped by
+ * capacity) for reuse.
+ * <p>
+ * The pool is bounded by the total capacity it retains. Buffers released
+ * while the pool is full are simply dropped and left to the GC.
+ */
+final class DirectBufferPool {
+
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final ConcurrentMap<Integer, Queue<ByteBuffer>> free = new ConcurrentHashMap<>();
+
+    DirectBufferPool(long maxRetainedBytes) {
+        Preconditions.checkArgument(maxRetainedBytes >= 0);
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Returns a cleared direct buffer of exactly {@code capacity} bytes,
+     * reusing a pooled buffer when one is available.
+     */
+    ByteBuffer acquire(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be > 0");
+        Queue<ByteBuffer> queue = free.get(capacity);
+        ByteBuffer buf = queue == null ? null : queue.poll();
+        if (buf == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        retainedBytes.addAndGet(-capacity);
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Returns {@code buf} to the pool. The caller must not use {@code buf}
+     * after releasing it.
+     */
+    void release(ByteBuffer buf) {
+        Preconditions.checkNotNull(buf);
+        Preconditions.checkArgument(buf.isDirect(), "only direct buffers can be pooled");
+
+        final int capacity = buf.capacity();
+        long current;
+        do {
+            current = retainedBytes.get();
+            if (current + capacity > maxRetainedBytes) {
+                return;
+            }
+        } while (!retainedBytes.compareAndSet(current, current + capacity));
+
+        free.computeIfAbsent(capacity, k -> new ConcurrentLinkedQueue<>()).offer(buf);
+    }
+
+    /**
+     * @return the total capacity of the buffers currently held by the pool.
+     */
+    long retainedBytes() {
+        return retainedBytes.get();
+    }
+}
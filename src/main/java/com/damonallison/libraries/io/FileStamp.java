@@ -0,0 +1,123 @@
+package com.damonallison.libraries.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file's size and modification time, recorded so a sidecar (a cache of
+ * something computed from the file) can tell whether the file has changed
+ * since.
+ * <p>
+ * Comparing size and modification time is cheap, but racy. A filesystem's
+ * timestamps only advance once per clock tick (2 seconds on FAT, a few
+ * milliseconds of kernel clock on ext4), so a file modified twice in the same
+ * tick has the same modification time both times. git calls this the "racy
+ * index" problem, and its rule is used here: a stamp is only trusted if the
+ * file's modification time is older than the stamp by at least the
+ * timestamp granularity. Any later change then has a later modification
+ * time.
+ * <p>
+ * Files modified while they are being stamped (concurrently with the cache
+ * being computed) are not detected.
+ */
+final class FileStamp {
+
+    /**
+     * Two ticks of a 100 Hz kernel clock, the coarsest clock commonly backing
+     * sub-second timestamps.
+     */
+    static final long CLOCK_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * FAT's timestamp granularity, assumed whenever a modification time is a
+     * whole second.
+     */
+    static final long SECOND_GRANULARITY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    final long size;
+
+    /**
+     * The file's modification time, in nanoseconds since the epoch.
+     */
+    final long modified;
+
+    /**
+     * When the stamp was taken, in nanoseconds since the epoch.
+     */
+    final long recorded;
+
+    FileStamp(long size, long modified, long recorded) {
+        this.size = size;
+        this.modified = modified;
+        this.recorded = recorded;
+    }
+
+    /**
+     * Stamps {@code file} as it is now.
+     */
+    static FileStamp of(Path file) throws IOException {
+        final long modified = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+        final long size = Files.size(file);
+        return new FileStamp(size, modified, now());
+    }
+
+    /**
+     * Stamps {@code file}, first waiting out the timestamp granularity if
+     * {@code file} was modified too recently to be trusted.
+     *
+     * @return a stamp of {@code file} as it was when this was called. If
+     * {@code file} changes while waiting, the returned stamp is racy, so it
+     * will never match.
+     */
+    static FileStamp settle(Path file) throws IOException {
+        final FileStamp stamp = of(file);
+        if (!stamp.isRacy()) {
+            return stamp;
+        }
+        final long wait = stamp.modified + granularity(stamp.modified) - stamp.recorded;
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return stamp;
+        }
+        final FileStamp later = of(file);
+        return later.size == stamp.size && later.modified == stamp.modified ? later : stamp;
+    }
+
+    /**
+     * @return the granularity assumed for a file modified at {@code modified}.
+     */
+    static long granularity(long modified) {
+        return modified % TimeUnit.SECONDS.toNanos(1) == 0
+                ? SECOND_GRANULARITY_NANOS
+                : CLOCK_GRANULARITY_NANOS;
+    }
+
+    /**
+     * @return {@code true} if the file could be modified again without its
+     * modification time changing.
+     */
+    boolean isRacy() {
+        return recorded - modified < granularity(modified);
+    }
+
+    /**
+     * @return {@code true} if this stamp can be trusted and {@code file}
+     * still has the same size and modification time.
+     */
+    boolean matches(Path file) throws IOException {
+        return !isRacy()
+                && Files.exists(file)
+                && Files.size(file) == size
+                && Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS) == modified;
+    }
+
+    private static long now() {
+        Instant now = Instant.now();
+        return TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+    }
+}
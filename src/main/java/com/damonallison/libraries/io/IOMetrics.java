@@ -0,0 +1,502 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in instrumentation for the copies in {@link IOUtilities}.
+ * <p>
+ * While enabled, each copy records the bytes it read and wrote, the number of
+ * read / write calls it made, its wall time, the time spent inside those
+ * calls ("blocked" time) and the size of the buffer it used. Operations are
+ * aggregated per method (i.e., {@code "channelCopy"}) into counters and
+ * latency histograms, which can be read with {@link #snapshot()}.
+ * <p>
+ * Metrics are disabled by default. When disabled, {@link #start} returns a
+ * shared {@link Operation} whose methods do nothing. The JIT only ever sees
+ * that one implementation at each call site, so the calls are inlined away
+ * and the copy loops run as if they weren't instrumented. The cost left is
+ * one volatile read per copy.
+ * <p>
+ * Not every copy can see every call. Memory mapped reads are page faults,
+ * not calls, so {@code mappedCopy} only records writes. A zero copy
+ * {@code transferTo} both reads and writes; it is recorded as a write. Copies
+ * which hand the file to another class (i.e., {@code dataCopy}) record their
+ * wall time and the size of the file written.
+ */
+public final class IOMetrics {
+
+    private static volatile boolean enabled;
+
+    private static final ConcurrentMap<String, Counters> COUNTERS = new ConcurrentHashMap<>();
+
+    private IOMetrics() {
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public static void reset() {
+        COUNTERS.clear();
+    }
+
+    /**
+     * @return the metrics of each method which has recorded an operation,
+     * sorted by method name
+     */
+    public static Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        COUNTERS.forEach((method, counters) -> snapshots.put(method, counters.snapshot()));
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * @return the metrics of {@code method}. All values are zero if it
+     * hasn't recorded an operation.
+     */
+    public static Snapshot snapshot(String method) {
+        Preconditions.checkNotNull(method);
+        Counters counters = COUNTERS.get(method);
+        return counters == null ? new Counters().snapshot() : counters.snapshot();
+    }
+
+    /**
+     * Starts recording an operation of {@code method}.
+     *
+     * @param bufferSize the size of the buffer the operation copies through,
+     *                   or {@code 0} if it doesn't use one
+     * @return an operation which does nothing if metrics are disabled
+     */
+    static Operation start(String method, int bufferSize) {
+        if (!enabled) {
+            return Operation.NOOP;
+        }
+        return new Recording(COUNTERS.computeIfAbsent(method, m -> new Counters()), bufferSize);
+    }
+
+    /**
+     * Records the calls made by a single copy. This base class records
+     * nothing; it is what {@link #start} returns while metrics are disabled.
+     * <p>
+     * Each read / write is bracketed by {@link #begin()} and
+     * {@link #read} / {@link #write}:
+     * <pre>
+     * long begin = op.begin();
+     * int n = channel.read(buf);
+     * op.read(n, begin);
+     * </pre>
+     * Operations may be shared by threads copying the same file.
+     */
+    static class Operation {
+
+        static final Operation NOOP = new Operation();
+
+        private Operation() {
+        }
+
+        /**
+         * @return the time a read / write starts, in {@link System#nanoTime()}
+         * units
+         */
+        long begin() {
+            return 0;
+        }
+
+        /**
+         * Records a read call which started at {@code begin} and returned
+         * {@code n} (-1 at end of stream).
+         */
+        void read(long n, long begin) {
+        }
+
+        /**
+         * Records a write call which started at {@code begin} and wrote
+         * {@code n} bytes.
+         */
+        void write(long n, long begin) {
+        }
+
+        /**
+         * @return {@code channel}, recording each read if metrics are enabled
+         */
+        ReadableByteChannel reading(ReadableByteChannel channel) {
+            return channel;
+        }
+
+        /**
+         * @return {@code channel}, recording each write if metrics are enabled
+         */
+        WritableByteChannel writing(WritableByteChannel channel) {
+            return channel;
+        }
+
+        /**
+         * Completes the operation. Calls after the first are ignored.
+         */
+        void finish() {
+        }
+
+        /**
+         * Completes an operation whose reads / writes weren't recorded,
+         * recording the sizes of the files it read and wrote instead.
+         *
+         * @param in  the file read, or {@code null}
+         * @param out the file written, or {@code null}
+         */
+        void finish(Path in, Path out) {
+        }
+    }
+
+    private static final class Recording extends Operation {
+
+        private final Counters counters;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Recording(Counters counters, int bufferSize) {
+            this.counters = counters;
+            counters.bufferSize = bufferSize;
+        }
+
+        @Override
+        long begin() {
+            return System.nanoTime();
+        }
+
+        @Override
+        void read(long n, long begin) {
+            final long elapsed = System.nanoTime() - begin;
+            counters.readCalls.increment();
+            counters.blockedNanos.add(elapsed);
+            counters.callLatency.record(elapsed);
+            if (n > 0) {
+                counters.bytesRead.add(n);
+            }
+        }
+
+        @Override
+        void write(long n, long begin) {
+            final long elapsed = System.nanoTime() - begin;
+            counters.writeCalls.increment();
+            counters.blockedNanos.add(elapsed);
+            counters.callLatency.record(elapsed);
+            if (n > 0) {
+                counters.bytesWritten.add(n);
+            }
+        }
+
+        @Override
+        ReadableByteChannel reading(ReadableByteChannel channel) {
+            return new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    final long begin = begin();
+                    final int n = channel.read(dst);
+                    Recording.this.read(n, begin);
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        @Override
+        WritableByteChannel writing(WritableByteChannel channel) {
+            return new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    final long begin = begin();
+                    final int n = channel.write(src);
+                    Recording.this.write(n, begin);
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        @Override
+        void finish() {
+            if (finished.compareAndSet(false, true)) {
+                final long elapsed = System.nanoTime() - start;
+                counters.operations.increment();
+                counters.wallNanos.add(elapsed);
+                counters.operationLatency.record(elapsed);
+            }
+        }
+
+        @Override
+        void finish(Path in, Path out) {
+            try {
+                if (in != null && Files.exists(in)) {
+                    counters.bytesRead.add(Files.size(in));
+                }
+                if (out != null && Files.exists(out)) {
+                    counters.bytesWritten.add(Files.size(out));
+                }
+            } catch (IOException e) {
+                // Metrics never fail a copy. The sizes simply aren't recorded.
+            }
+            finish();
+        }
+    }
+
+    /**
+     * The live metrics of one method.
+     */
+    private static final class Counters {
+        final LongAdder operations = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder bytesWritten = new LongAdder();
+        final LongAdder readCalls = new LongAdder();
+        final LongAdder writeCalls = new LongAdder();
+        final LongAdder wallNanos = new LongAdder();
+        final LongAdder blockedNanos = new LongAdder();
+        final LiveHistogram operationLatency = new LiveHistogram();
+        final LiveHistogram callLatency = new LiveHistogram();
+        volatile int bufferSize;
+
+        Snapshot snapshot() {
+            return new Snapshot(operations.sum(), bytesRead.sum(), bytesWritten.sum(),
+                    readCalls.sum(), writeCalls.sum(), wallNanos.sum(), blockedNanos.sum(),
+                    bufferSize, operationLatency.snapshot(), callLatency.snapshot());
+        }
+    }
+
+    /**
+     * Counts values into power of two buckets. Bucket {@code i} holds values
+     * in {@code [2^(i-1), 2^i)}; bucket 0 holds 0.
+     */
+    private static final class LiveHistogram {
+        private final AtomicLongArray counts = new AtomicLongArray(Histogram.BUCKETS);
+
+        void record(long nanos) {
+            counts.incrementAndGet(Histogram.bucket(nanos));
+        }
+
+        Histogram snapshot() {
+            long[] copy = new long[Histogram.BUCKETS];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = counts.get(i);
+            }
+            return new Histogram(copy);
+        }
+    }
+
+    /**
+     * The metrics of one method at the time {@link #snapshot()} was called.
+     * Times are in nanoseconds.
+     */
+    public static final class Snapshot {
+        private final long operations;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long readCalls;
+        private final long writeCalls;
+        private final long wallNanos;
+        private final long blockedNanos;
+        private final int bufferSize;
+        private final Histogram operationLatency;
+        private final Histogram callLatency;
+
+        private Snapshot(long operations, long bytesRead, long bytesWritten, long readCalls,
+                         long writeCalls, long wallNanos, long blockedNanos, int bufferSize,
+                         Histogram operationLatency, Histogram callLatency) {
+            this.operations = operations;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.readCalls = readCalls;
+            this.writeCalls = writeCalls;
+            this.wallNanos = wallNanos;
+            this.blockedNanos = blockedNanos;
+            this.bufferSize = bufferSize;
+            this.operationLatency = operationLatency;
+            this.callLatency = callLatency;
+        }
+
+        /**
+         * @return the number of completed operations.
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getReadCalls() {
+            return readCalls;
+        }
+
+        public long getWriteCalls() {
+            return writeCalls;
+        }
+
+        /**
+         * @return the total wall time of all completed operations.
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return the total time spent inside read / write calls. For
+         * asynchronous copies, this is the total time requests were
+         * outstanding, which can exceed the wall time.
+         */
+        public long getBlockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * @return the buffer size used by the most recent operation, or
+         * {@code 0} if it didn't copy through a buffer.
+         */
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        /**
+         * @return bytes written per second of wall time, or {@code 0} if no
+         * operation has completed.
+         */
+        public double getThroughput() {
+            return wallNanos == 0 ? 0 : bytesWritten * 1e9 / wallNanos;
+        }
+
+        /**
+         * @return the wall time of each operation.
+         */
+        public Histogram getOperationLatency() {
+            return operationLatency;
+        }
+
+        /**
+         * @return the time spent in each read / write call.
+         */
+        public Histogram getCallLatency() {
+            return callLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Snapshot{operations=%d, bytesRead=%d, bytesWritten=%d, readCalls=%d, "
+                            + "writeCalls=%d, wallNanos=%d, blockedNanos=%d, bufferSize=%d}",
+                    operations, bytesRead, bytesWritten, readCalls, writeCalls, wallNanos, blockedNanos,
+                    bufferSize);
+        }
+    }
+
+    /**
+     * A latency histogram with power of two nanosecond buckets. Bucket
+     * {@code i} counts values in {@code [2^(i-1), 2^i)}, so values are
+     * accurate to within a factor of two, which is plenty to tell a page
+     * cache hit from a disk read.
+     */
+    public static final class Histogram {
+
+        static final int BUCKETS = 64;
+
+        private final long[] counts;
+        private final long count;
+
+        private Histogram(long[] counts) {
+            this.counts = counts;
+            this.count = Arrays.stream(counts).sum();
+        }
+
+        static int bucket(long nanos) {
+            return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+        }
+
+        /**
+         * @return the largest value counted by bucket {@code i}.
+         */
+        public static long upperBound(int i) {
+            Preconditions.checkElementIndex(i, BUCKETS);
+            return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+
+        /**
+         * @return the number of values recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of values in each bucket.
+         */
+        public long[] getCounts() {
+            return counts.clone();
+        }
+
+        /**
+         * @return the upper bound of the bucket holding the {@code p}th
+         * percentile value, or {@code 0} if the histogram is empty.
+         */
+        public long percentile(double p) {
+            Preconditions.checkArgument(p >= 0 && p <= 100, "p must be between 0 and 100");
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(count * p / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+    }
+}
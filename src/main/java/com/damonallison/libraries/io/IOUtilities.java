@@ -1,70 +1,761 @@
 package com.damonallison.libraries.io;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
 
 public final class IOUtilities {
 
     /**
-     * Performs a low level, byte by byte copy of {@code in} to {@code out}.
+     * The buffer size used when a channel copy can't be handed to the kernel
+     * and must be moved through user space.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of bytes mapped at a time when memory mapping files.
+     */
+    public static final long DEFAULT_MAP_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * The buffer size used by each worker of a parallel copy. Larger requests
+     * keep more data in flight per worker.
+     */
+    static final int PARALLEL_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The number of reads / writes an asynchronous copy keeps outstanding.
+     */
+    static final int DEFAULT_ASYNC_IN_FLIGHT = 4;
+
+    /**
+     * The number of objects {@link #objectCopy(List, List, Path)} writes
+     * between calls to {@link ObjectOutputStream#reset()}.
+     */
+    static final int OBJECT_RESET_INTERVAL = 1024;
+
+    /**
+     * Direct buffers used by channel copies are drawn from (and returned to)
+     * this pool rather than allocated per copy.
+     */
+    static final DirectBufferPool BUFFER_POOL = new DirectBufferPool(64L * 1024 * 1024);
+
+    /**
+     * Performs a low level byte copy of {@code in} to {@code out}.
      * <p>
-     * FileInputStreamByte streams are the lowest level of I/O. If you are
-     * dealing with a known data format (i.e., character data), use something
-     * higher level, like a character stream.
+     * Byte streams are the lowest level of I/O and the basis for all other
+     * streams. Reading a single byte per call, however, results in a system
+     * call per byte. Instead, this copies at the channel level with
+     * {@link FileChannel#transferTo}, which lets the OS copy directly between
+     * the two files (i.e., {@code sendfile} or {@code copy_file_range}) without
+     * moving the data through the Java heap.
      * <p>
-     * Byte streams are the basis for all other streams.
+     * If you are dealing with a known data format (i.e., character data), use
+     * something higher level, like a character stream.
      *
      * @param in  the source file to copy from
      * @param out the destination file to copy to
      */
     public static void byteCopy(Path in, Path out) throws IOException {
+        byteCopy(in, out, CopyOptions.defaults());
+    }
+
+    /**
+     * Copies {@code in} to {@code out} as {@link #byteCopy(Path, Path)} does,
+     * optionally checksumming and verifying the copy.
+     * <p>
+     * A zero copy transfer never moves the data through user space, so there
+     * is nothing to checksum. When {@link CopyOptions#isChecksum()} is set,
+     * the file is copied through a direct buffer instead (see
+     * {@link #channelCopy(Path, Path, int, CopyOptions)}).
+     *
+     * @param in      the source file to copy from
+     * @param out     the destination file to copy to
+     * @param options whether to checksum / verify the copy
+     * @return the number of bytes copied and their checksum
+     * @throws IOException if the copy fails, or verification is requested
+     *                     and the destination doesn't match
+     */
+    public static CopyResult byteCopy(Path in, Path out, CopyOptions options) throws IOException {
 
         Preconditions.checkNotNull(in);
         Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(options);
+
+        final IOMetrics.Operation op = IOMetrics.start("byteCopy",
+                options.isChecksum() ? DEFAULT_BUFFER_SIZE : 0);
+        try {
+            CopyResult result;
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(out,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (options.isChecksum()) {
+                    CRC32C crc = new CRC32C();
+                    long bytes = bufferedCopy(source, target, DEFAULT_BUFFER_SIZE, crc, op);
+                    result = new CopyResult(bytes, crc.getValue(), false);
+                } else {
+                    result = CopyResult.of(transfer(source, target, op));
+                }
+            }
+            return complete(out, result, options);
+        } finally {
+            op.finish();
+        }
+    }
+
+    /**
+     * Verifies {@code out} against {@code result} if {@code options} asks
+     * for it. Called after the destination has been closed.
+     */
+    static CopyResult complete(Path out, CopyResult result, CopyOptions options) throws IOException {
+        return options.isVerify() ? verify(out, result) : result;
+    }
+
+    /**
+     * Reads {@code out} back, comparing its size and checksum to those
+     * computed while it was being written.
+     *
+     * @return {@code result}, marked verified
+     * @throws IOException if {@code out} doesn't match
+     */
+    static CopyResult verify(Path out, CopyResult result) throws IOException {
+        final CopyResult actual;
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.READ)) {
+            actual = Crc32c.checksum(channel);
+        }
+        if (actual.getBytes() != result.getBytes() || actual.getChecksum() != result.getChecksum()) {
+            throw new IOException(String.format(
+                    "%s failed verification: expected %d bytes with crc32c %08x, found %d bytes with crc32c %08x",
+                    out, result.getBytes(), result.getChecksum(), actual.getBytes(), actual.getChecksum()));
+        }
+        return result.verified();
+    }
+
+    /**
+     * Transfers the contents of {@code source} into {@code target}, starting
+     * at each channel's current position.
+     * <p>
+     * {@link FileChannel#transferTo} is allowed to transfer fewer bytes than
+     * requested, so it is called in a loop until the entire file has been
+     * copied. If it stops making progress (some platforms / channel types
+     * can't do a zero-copy transfer), the remainder is copied through a
+     * buffer.
+     *
+     * @param op records each transfer as a write
+     * @return the number of bytes copied
+     */
+    static long transfer(FileChannel source, FileChannel target,
+                         IOMetrics.Operation op) throws IOException {
+        final long start = source.position();
+        final long size = source.size();
+        long position = start;
+        while (position < size) {
+            final long begin = op.begin();
+            long n = source.transferTo(position, size - position, target);
+            op.write(n, begin);
+            if (n <= 0) {
+                source.position(position);
+                return (position - start) + bufferedCopy(source, target, DEFAULT_BUFFER_SIZE, null, op);
+            }
+            position += n;
+        }
+        return position - start;
+    }
+
+    /**
+     * Copies {@code in} to {@code out} through a pooled direct buffer sized to
+     * the block size of the file store {@code out} is written to.
+     *
+     * @see #channelCopy(Path, Path, int)
+     */
+    public static void channelCopy(Path in, Path out) throws IOException {
+        channelCopy(in, out, 0);
+    }
+
+    /**
+     * Copies {@code in} to {@code out} by reading / writing channels through a
+     * direct buffer.
+     * <p>
+     * Buffers are drawn from a bounded pool shared across calls, so frequent
+     * copies don't allocate (and later garbage collect) a new buffer each time.
+     *
+     * @param in         the source file to copy from
+     * @param out        the destination file to copy to
+     * @param bufferSize the size of the copy buffer, in bytes. If {@code 0},
+     *                   the block size of {@code out}'s {@link FileStore} is
+     *                   used.
+     */
+    public static void channelCopy(Path in, Path out, int bufferSize) throws IOException {
+        channelCopy(in, out, bufferSize, CopyOptions.defaults());
+    }
 
-        try (FileInputStream istream = new FileInputStream(in.toFile());
-             FileOutputStream ostream = new FileOutputStream(out.toFile())) {
+    /**
+     * Copies {@code in} to {@code out} as
+     * {@link #channelCopy(Path, Path, int)} does, optionally checksumming
+     * each buffer between reading and writing it.
+     *
+     * @param in         the source file to copy from
+     * @param out        the destination file to copy to
+     * @param bufferSize the size of the copy buffer, in bytes, or {@code 0}
+     *                   for the block size of {@code out}'s file store
+     * @param options    whether to checksum / verify the copy
+     * @return the number of bytes copied and their checksum
+     * @throws IOException if the copy fails, or verification is requested
+     *                     and the destination doesn't match
+     */
+    public static CopyResult channelCopy(Path in, Path out, int bufferSize,
+                                         CopyOptions options) throws IOException {
 
-            int c; // holds 8 bit chars. Byte based reads are 8 bits.
-            while ((c = istream.read()) != -1) {
-                ostream.write(c);
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(bufferSize >= 0, "bufferSize must be >= 0");
+        Preconditions.checkNotNull(options);
+
+        final int size = bufferSize == 0 ? blockSize(out) : bufferSize;
+        final IOMetrics.Operation op = IOMetrics.start("channelCopy", size);
+        try {
+            CopyResult result;
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(out,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                CRC32C crc = options.isChecksum() ? new CRC32C() : null;
+                long bytes = bufferedCopy(source, target, size, crc, op);
+                result = crc == null ? CopyResult.of(bytes) : new CopyResult(bytes, crc.getValue(), false);
             }
+            return complete(out, result, options);
+        } finally {
+            op.finish();
+        }
+    }
 
+    /**
+     * Returns the block size of the {@link FileStore} {@code path} lives on,
+     * or {@link #DEFAULT_BUFFER_SIZE} if the file store doesn't report one.
+     * {@code path} needn't exist yet; if it doesn't, its parent directory's
+     * file store is used.
+     */
+    static int blockSize(Path path) {
+        try {
+            Path existing = Files.exists(path) ? path : path.toAbsolutePath().getParent();
+            if (existing != null) {
+                long blockSize = Files.getFileStore(existing).getBlockSize();
+                if (blockSize > 0 && blockSize <= Integer.MAX_VALUE) {
+                    return (int) blockSize;
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // Fall thru to the default. Opening path reports any real problem.
         }
+        return DEFAULT_BUFFER_SIZE;
     }
 
     /**
-     * Performs a character by character copy using character streams.
+     * Copies {@code source} into {@code target} through a pooled direct buffer
+     * of {@link #DEFAULT_BUFFER_SIZE} bytes until {@code source} reaches end
+     * of stream.
+     *
+     * @return the number of bytes copied
+     */
+    static long bufferedCopy(ReadableByteChannel source,
+                             WritableByteChannel target) throws IOException {
+        return bufferedCopy(source, target, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Copies {@code source} into {@code target} through a pooled direct buffer
+     * of {@code bufferSize} bytes until {@code source} reaches end of stream.
      * <p>
-     * Character streams translate the underlying Unicode characters to/from the
-     * local character set.
+     * Channel writes may be partial, so each buffer is written until it has
+     * been drained.
+     *
+     * @return the number of bytes copied
+     */
+    static long bufferedCopy(ReadableByteChannel source,
+                             WritableByteChannel target,
+                             int bufferSize) throws IOException {
+        return bufferedCopy(source, target, bufferSize, null, IOMetrics.Operation.NOOP);
+    }
+
+    /**
+     * Copies {@code source} into {@code target} through a pooled direct buffer
+     * of {@code bufferSize} bytes, adding each buffer to {@code crc} (if not
+     * {@code null}) before writing it.
+     *
+     * @param op records each read / write
+     * @return the number of bytes copied
+     */
+    static long bufferedCopy(ReadableByteChannel source,
+                             WritableByteChannel target,
+                             int bufferSize,
+                             CRC32C crc,
+                             IOMetrics.Operation op) throws IOException {
+        ByteBuffer buf = BUFFER_POOL.acquire(bufferSize);
+        try {
+            long total = 0;
+            while (true) {
+                long begin = op.begin();
+                final int n = source.read(buf);
+                op.read(n, begin);
+                if (n == -1) {
+                    return total;
+                }
+                buf.flip();
+                if (crc != null) {
+                    Crc32c.update(crc, buf);
+                }
+                while (buf.hasRemaining()) {
+                    begin = op.begin();
+                    final int written = target.write(buf);
+                    op.write(written, begin);
+                    total += written;
+                }
+                buf.clear();
+            }
+        } finally {
+            BUFFER_POOL.release(buf);
+        }
+    }
+
+    /**
+     * Copies {@code in} to {@code out} by splitting it into chunks of
+     * {@code chunkSize} bytes and copying the chunks concurrently.
+     * <p>
+     * The destination is sized up front, then each worker copies its chunk
+     * with positional reads / writes ({@link FileChannel#read(ByteBuffer, long)}
+     * / {@link FileChannel#write(ByteBuffer, long)}). Positional I/O doesn't
+     * touch the channel's position, so all workers can safely share the same
+     * pair of channels.
+     * <p>
+     * A single thread rarely keeps enough I/O requests in flight to saturate
+     * fast storage (i.e., NVMe). Multiple concurrent requests can.
+     *
+     * @param in          the source file to copy from
+     * @param out         the destination file to copy to
+     * @param parallelism the number of chunks copied at the same time
+     * @param chunkSize   the number of bytes copied by each task
+     */
+    public static void parallelCopy(Path in, Path out, int parallelism,
+                                    long chunkSize) throws IOException {
+        parallelCopy(in, out, parallelism, chunkSize, CopyOptions.defaults());
+    }
+
+    /**
+     * Copies {@code in} to {@code out} as
+     * {@link #parallelCopy(Path, Path, int, long)} does, optionally
+     * checksumming the copy.
+     * <p>
+     * Each worker checksums its own chunk. The chunk checksums are then
+     * combined, in file order, into the checksum of the whole file (see
+     * {@link Crc32c#combine}), so checksumming doesn't serialize the copy.
+     *
+     * @param in          the source file to copy from
+     * @param out         the destination file to copy to
+     * @param parallelism the number of chunks copied at the same time
+     * @param chunkSize   the number of bytes copied by each task
+     * @param options     whether to checksum / verify the copy
+     * @return the number of bytes copied and their checksum
+     * @throws IOException if the copy fails, or verification is requested
+     *                     and the destination doesn't match
+     */
+    public static CopyResult parallelCopy(Path in, Path out, int parallelism,
+                                          long chunkSize, CopyOptions options) throws IOException {
+
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be > 0");
+        Preconditions.checkNotNull(options);
+
+        final IOMetrics.Operation op = IOMetrics.start("parallelCopy", PARALLEL_BUFFER_SIZE);
+        try {
+            final boolean checksum = options.isChecksum();
+            CopyResult result;
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(out,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                final long size = source.size();
+                long crc = 0;
+                if (size == 0) {
+                    return complete(out, checksum ? new CopyResult(0, crc, false) : CopyResult.of(0), options);
+                }
+                // Preallocate by writing the last byte. Chunks can then be written
+                // in any order.
+                target.write(ByteBuffer.wrap(new byte[1]), size - 1);
+
+                final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("parallel-copy-%d")
+                                .setDaemon(true)
+                                .build());
+                try {
+                    List<Future<Long>> chunks = new ArrayList<>();
+                    for (long position = 0; position < size; position += chunkSize) {
+                        final long start = position;
+                        final long end = Math.min(size, position + chunkSize);
+                        chunks.add(executor.submit(() ->
+                                copyRange(source, target, start, end, checksum ? new CRC32C() : null, op)));
+                    }
+                    for (int i = 0; i < chunks.size(); i++) {
+                        final long chunkCrc = chunks.get(i).get();
+                        if (checksum) {
+                            final long length = Math.min(chunkSize, size - i * chunkSize);
+                            crc = Crc32c.combine(crc, chunkCrc, length);
+                        }
+                    }
+                    result = checksum ? new CopyResult(size, crc, false) : CopyResult.of(size);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("parallel copy interrupted");
+                } catch (ExecutionException e) {
+                    Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw new IOException(e.getCause());
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+            return complete(out, result, options);
+        } finally {
+            op.finish();
+        }
+    }
+
+    /**
+     * Asynchronously copies {@code in} to {@code out}, running completion
+     * handlers on the JVM's default thread pool.
+     *
+     * @see #copyAsync(Path, Path, int, ExecutorService)
+     */
+    public static CompletableFuture<Long> copyAsync(Path in, Path out) {
+        return copyAsync(in, out, DEFAULT_ASYNC_IN_FLIGHT, null);
+    }
+
+    /**
+     * Asynchronously copies {@code in} to {@code out}, running completion
+     * handlers on {@code executor}.
+     *
+     * @see #copyAsync(Path, Path, int, ExecutorService)
+     */
+    public static CompletableFuture<Long> copyAsync(Path in, Path out,
+                                                    ExecutorService executor) {
+        Preconditions.checkNotNull(executor);
+        return copyAsync(in, out, DEFAULT_ASYNC_IN_FLIGHT, executor);
+    }
+
+    /**
+     * Asynchronously copies {@code in} to {@code out} using
+     * {@link java.nio.channels.AsynchronousFileChannel}s.
+     * <p>
+     * This method returns immediately. No thread blocks waiting for I/O;
+     * each read / write is started from the completion of the previous one.
+     * Multiple copies can be composed with the {@link CompletableFuture} API
+     * without dedicating a thread to each.
+     * <p>
+     * Cancelling (or otherwise completing) the returned future stops the copy
+     * and closes both files. The destination is left partially written.
+     *
+     * @param in       the source file to copy from
+     * @param out      the destination file to copy to
+     * @param inFlight the maximum number of reads / writes outstanding at once
+     * @param executor runs the channels' completion handlers, or {@code null}
+     *                 for the JVM's default thread pool
+     * @return a future which completes with the number of bytes copied, or
+     * completes exceptionally if the copy fails
+     */
+    public static CompletableFuture<Long> copyAsync(Path in, Path out, int inFlight,
+                                                    ExecutorService executor) {
+        return AsyncCopy.start(in, out, inFlight, PARALLEL_BUFFER_SIZE, executor);
+    }
+
+    /**
+     * Asynchronously copies {@code in} to {@code out} as
+     * {@link #copyAsync(Path, Path, int, ExecutorService)} does, optionally
+     * checksumming the copy.
+     * <p>
+     * Blocks complete out of order, so each block is checksummed separately
+     * and the block checksums combined once the copy completes. Verification
+     * reads the destination back on the thread which completes the last
+     * block.
+     *
+     * @param in       the source file to copy from
+     * @param out      the destination file to copy to
+     * @param inFlight the maximum number of reads / writes outstanding at once
+     * @param executor runs the channels' completion handlers, or {@code null}
+     *                 for the JVM's default thread pool
+     * @param options  whether to checksum / verify the copy
+     * @return a future which completes with the number of bytes copied and
+     * their checksum, or completes exceptionally if the copy (or
+     * verification) fails
+     */
+    public static CompletableFuture<CopyResult> copyAsync(Path in, Path out, int inFlight,
+                                                          ExecutorService executor,
+                                                          CopyOptions options) {
+        return AsyncCopy.start(in, out, inFlight, PARALLEL_BUFFER_SIZE, executor, options);
+    }
+
+    /**
+     * Copies bytes {@code [start, end)} of {@code source} to the same offsets
+     * in {@code target} with positional reads / writes.
+     *
+     * @param crc if not {@code null}, each buffer is added to it before
+     *            being written
+     * @param op  records each read / write
+     * @return the checksum of the range, or {@code 0} if {@code crc} is
+     * {@code null}
+     */
+    static long copyRange(FileChannel source, FileChannel target,
+                          long start, long end, CRC32C crc,
+                          IOMetrics.Operation op) throws IOException {
+        ByteBuffer buf = BUFFER_POOL.acquire(PARALLEL_BUFFER_SIZE);
+        try {
+            long position = start;
+            while (position < end) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), end - position));
+                long begin = op.begin();
+                int n = source.read(buf, position);
+                op.read(n, begin);
+                if (n < 0) {
+                    throw new EOFException(String.format(
+                            "%d bytes expected at offset %d, file was truncated", end - position, position));
+                }
+                buf.flip();
+                if (crc != null) {
+                    Crc32c.update(crc, buf);
+                }
+                long offset = position;
+                while (buf.hasRemaining()) {
+                    begin = op.begin();
+                    final int written = target.write(buf, offset);
+                    op.write(written, begin);
+                    offset += written;
+                }
+                position += n;
+            }
+            return crc == null ? 0 : crc.getValue();
+        } finally {
+            BUFFER_POOL.release(buf);
+        }
+    }
+
+    /**
+     * Copies {@code in} to {@code out} using memory mapped windows of
+     * {@link #DEFAULT_MAP_WINDOW_SIZE} bytes.
+     *
+     * @see #mappedCopy(Path, Path, long)
+     */
+    public static void mappedCopy(Path in, Path out) throws IOException {
+        mappedCopy(in, out, DEFAULT_MAP_WINDOW_SIZE);
+    }
+
+    /**
+     * Copies {@code in} to {@code out} by memory mapping the source.
+     * <p>
+     * A mapped region is limited to 2 GB, so the source is mapped one window
+     * at a time. Each window is written to the destination at its file offset.
+     * The source bytes are paged in by the OS and never copied onto the Java
+     * heap.
+     *
+     * @param in         the source file to copy from
+     * @param out        the destination file to copy to
+     * @param windowSize the number of bytes to map at a time. Must be between 1
+     *                   and {@link Integer#MAX_VALUE}.
+     */
+    public static void mappedCopy(Path in, Path out, long windowSize) throws IOException {
+        mappedCopy(in, out, windowSize, CopyOptions.defaults());
+    }
+
+    /**
+     * Copies {@code in} to {@code out} as
+     * {@link #mappedCopy(Path, Path, long)} does, optionally checksumming
+     * each mapped window before writing it.
+     *
+     * @param in         the source file to copy from
+     * @param out        the destination file to copy to
+     * @param windowSize the number of bytes to map at a time
+     * @param options    whether to checksum / verify the copy
+     * @return the number of bytes copied and their checksum
+     * @throws IOException if the copy fails, or verification is requested
+     *                     and the destination doesn't match
+     */
+    public static CopyResult mappedCopy(Path in, Path out, long windowSize,
+                                        CopyOptions options) throws IOException {
+
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(windowSize > 0 && windowSize <= Integer.MAX_VALUE,
+                "windowSize must be between 1 and Integer.MAX_VALUE");
+        Preconditions.checkNotNull(options);
+
+        final IOMetrics.Operation op = IOMetrics.start("mappedCopy", 0);
+        try {
+            CopyResult result;
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(out,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                final long size = source.size();
+                CRC32C crc = options.isChecksum() ? new CRC32C() : null;
+                for (long position = 0; position < size; position += windowSize) {
+                    MappedByteBuffer window = source.map(FileChannel.MapMode.READ_ONLY,
+                            position, Math.min(windowSize, size - position));
+                    if (crc != null) {
+                        Crc32c.update(crc, window);
+                    }
+                    long offset = position;
+                    while (window.hasRemaining()) {
+                        final long begin = op.begin();
+                        final int written = target.write(window, offset);
+                        op.write(written, begin);
+                        offset += written;
+                    }
+                }
+                result = crc == null ? CopyResult.of(size) : new CopyResult(size, crc.getValue(), false);
+            }
+            return complete(out, result, options);
+        } finally {
+            op.finish();
+        }
+    }
+
+    /**
+     * Updates {@code out} to be a copy of {@code in}, writing only the
+     * {@link DeltaCopy#DEFAULT_BLOCK_SIZE} blocks which have changed.
+     * <p>
+     * Use a delta copy to refresh a large copy of a file which changes a
+     * little at a time. Both files are read in full, but unchanged blocks
+     * aren't written. To avoid reading the destination too, use a
+     * {@link DeltaCopy} which caches signatures.
+     *
+     * @param in  the source file to copy from
+     * @param out the destination file to update
+     * @return the number of bytes copied and written
+     * @see DeltaCopy
+     */
+    public static DeltaCopy.Result deltaCopy(Path in, Path out) throws IOException {
+        return DeltaCopy.newBuilder().build().copy(in, out);
+    }
+
+    /**
+     * Returns a read-only, memory mapped view of {@code path} using windows of
+     * {@link #DEFAULT_MAP_WINDOW_SIZE} bytes.
+     * <p>
+     * Use a mapped view rather than {@link java.nio.file.Files#readAllBytes}
+     * to scan files which are too large to comfortably fit on the heap.
+     */
+    public static MappedFileView map(Path path) throws IOException {
+        return MappedFileView.open(path, DEFAULT_MAP_WINDOW_SIZE);
+    }
+
+    /**
+     * Copies a text file using the platform's default charset.
+     * <p>
+     * Like {@link FileReader} / {@link FileWriter}, malformed input is
+     * replaced with the charset's replacement character.
      *
      * @param in  the source text file to copy from
      * @param out the destination text file to copy to
+     * @see #charCopy(Path, Charset, Path, Charset, CodingErrorAction)
      */
     public static void charCopy(Path in, Path out) throws IOException {
+        charCopy(in, Charset.defaultCharset(), out, Charset.defaultCharset(),
+                CodingErrorAction.REPLACE);
+    }
 
-        try (FileReader reader = new FileReader(in.toFile());
-             FileWriter writer = new FileWriter(out.toFile())) {
+    /**
+     * Copies a text file, converting it from {@code inCharset} to
+     * {@code outCharset}.
+     * <p>
+     * Character streams translate the underlying bytes to/from Unicode
+     * characters. Rather than reading and writing a single character at a time
+     * through a {@link Reader} / {@link Writer}, this decodes and encodes
+     * entire buffers with a {@link java.nio.charset.CharsetDecoder} /
+     * {@link java.nio.charset.CharsetEncoder}, reusing the same buffers for the
+     * entire file.
+     *
+     * @param in         the source text file to copy from
+     * @param inCharset  the charset {@code in} is encoded with
+     * @param out        the destination text file to copy to
+     * @param outCharset the charset to encode {@code out} with
+     * @param onBadInput what to do with malformed input, or with characters
+     *                   which can't be represented in {@code outCharset}.
+     *                   {@link CodingErrorAction#REPORT} fails the copy with a
+     *                   {@link java.nio.charset.CharacterCodingException}.
+     */
+    public static void charCopy(Path in, Charset inCharset,
+                                Path out, Charset outCharset,
+                                CodingErrorAction onBadInput) throws IOException {
 
-            int c; // holds Unicode chars. Character based reads are 16 bits.
-            while ((c = reader.read()) != -1) {
-                writer.write(c);
-            }
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(inCharset);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(outCharset);
+        Preconditions.checkNotNull(onBadInput);
+
+        final IOMetrics.Operation op = IOMetrics.start("charCopy", DEFAULT_BUFFER_SIZE);
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(out,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            new Transcoder(inCharset, outCharset, onBadInput, DEFAULT_BUFFER_SIZE)
+                    .transcode(op.reading(source), op.writing(target));
+        } finally {
+            op.finish();
         }
     }
 
     /**
-     * Performs a line by line copy using buffered streams.
+     * Performs a line by line copy, writing each line followed by the
+     * platform's line separator.
      * <p>
-     * Buffered streams read / write into buffers to minimize the amount of
-     * actual disk I/O that must be performed.
+     * When the default charset is ASCII transparent (UTF-8, ISO-8859-*, etc.)
+     * line terminators can be found without decoding. The file is copied with
+     * the same bulk, ASCII / UTF-8 aware path as {@link #charCopy(Path, Path)}
+     * while the line terminators are rewritten at the byte level. No
+     * {@code String} is created per line.
+     * <p>
+     * Otherwise, lines are read and written with buffered character streams.
      *
      * @param in  the source text file to copy from
      * @param out the destination text file to copy to
@@ -72,6 +763,27 @@ public final class IOUtilities {
      */
     public static void lineCopy(Path in, Path out) throws IOException {
 
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+
+        final Charset charset = Charset.defaultCharset();
+        final IOMetrics.Operation op = IOMetrics.start("lineCopy", DEFAULT_BUFFER_SIZE);
+        if (ByteScanner.isAsciiTransparent(charset)) {
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(out,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING);
+                 LineSeparatorChannel lines = new LineSeparatorChannel(op.writing(target),
+                         System.lineSeparator().getBytes(charset), DEFAULT_BUFFER_SIZE)) {
+                new Transcoder(charset, charset, CodingErrorAction.REPLACE, DEFAULT_BUFFER_SIZE)
+                        .transcode(op.reading(source), lines);
+            } finally {
+                op.finish();
+            }
+            return;
+        }
+
         // Buffered streams wrap underlying non-buffered streams.
         //
         // There are 4 buffered stream classes used to wrap non-buffered
@@ -87,13 +799,128 @@ public final class IOUtilities {
             while ((line = reader.readLine()) != null) {
                 writer.println(line);
             }
+        } finally {
+            op.finish(in, out);
         }
     }
 
     /**
-     * Data streams read and write primitive types.
+     * Copies {@code in} to {@code out} line by line, passing each line through
+     * {@code transform}. Each line written is followed by the platform's line
+     * separator.
+     * <p>
+     * Lines are never decoded. They are found by scanning a reusable byte
+     * buffer for line terminators and handed to {@code transform} as
+     * {@link LineSlice} views of that buffer. Output lines are written through
+     * a reusable buffer. No {@code String} (or any other object) is created
+     * per line.
      * <p>
-     * This will *not* write object types.
+     * {@code in} must be encoded with an ASCII transparent charset (UTF-8,
+     * ISO-8859-*, etc.). Bytes are copied as-is, with no charset validation.
+     *
+     * @param in        the source text file to copy from
+     * @param out       the destination text file to copy to
+     * @param transform applied to each line. Use {@link LineTransform#filter}
+     *                  to drop lines.
+     */
+    public static void lineCopy(Path in, Path out, LineTransform transform) throws IOException {
+        lineCopy(in, out, transform, null);
+    }
+
+    /**
+     * Copies {@code in} to {@code out} like
+     * {@link #lineCopy(Path, Path, LineTransform)}, indexing the lines of
+     * {@code in} in the same pass. The index is written to {@code in}'s
+     * sidecar file and returned.
+     *
+     * @see LineIndex
+     */
+    public static LineIndex indexedLineCopy(Path in, Path out, LineTransform transform) throws IOException {
+        Preconditions.checkNotNull(in);
+        final FileStamp stamp = FileStamp.settle(in);
+        final LineIndex.Builder builder = new LineIndex.Builder(in, LineIndex.DEFAULT_INTERVAL);
+        final long size = lineCopy(in, out, transform, builder);
+        LineIndex index = builder.build(size, stamp);
+        index.write();
+        return index;
+    }
+
+    /**
+     * @param index if not {@code null}, records the offset of each line read
+     * @return the size of {@code in}
+     */
+    private static long lineCopy(Path in, Path out, LineTransform transform,
+                                 LineIndex.Builder index) throws IOException {
+
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(transform);
+
+        final IOMetrics.Operation op = IOMetrics.start("lineCopy", DEFAULT_BUFFER_SIZE);
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(out,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final long size = source.size();
+            LineReader reader = new LineReader(op.reading(source), DEFAULT_BUFFER_SIZE);
+            LineWriter writer = new LineWriter(op.writing(target),
+                    System.lineSeparator().getBytes(StandardCharsets.US_ASCII),
+                    DEFAULT_BUFFER_SIZE);
+            LineSlice line;
+            while ((line = reader.next()) != null) {
+                if (index != null) {
+                    index.add(reader.position());
+                }
+                transform.apply(line, writer);
+            }
+            writer.flush();
+            return size;
+        } finally {
+            op.finish();
+        }
+    }
+
+    /**
+     * Copies {@code in} to {@code out} line by line, passing each line through
+     * {@code transform}, with reading, transforming, and writing running on
+     * separate threads.
+     * <p>
+     * Use this when the transform is CPU intensive enough that it can't keep
+     * up with the disk on a single thread.
+     *
+     * @param workers the number of threads applying {@code transform}. If
+     *                greater than 1, {@code transform} must be thread safe.
+     * @see LinePipeline
+     */
+    public static void lineCopy(Path in, Path out, LineTransform transform,
+                                int workers) throws IOException {
+        final IOMetrics.Operation op = IOMetrics.start("lineCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            LinePipeline.newBuilder()
+                    .setWorkers(workers)
+                    .build()
+                    .copy(in, out, transform);
+        } finally {
+            op.finish(in, out);
+        }
+    }
+
+    /**
+     * Writes {@code headers} and {@code values} as a {@link ColumnarFile}.
+     * <p>
+     * Originally, this wrote each header with {@code writeUTF} and each value
+     * with its own {@code writeInt} call on an unbuffered
+     * {@link DataOutputStream}. Every {@code writeInt} was a 4 byte system
+     * call, and nothing recorded how many headers or values the file held.
+     * The columnar format keeps the {@link DataOutputStream} encoding (big
+     * endian, modified UTF-8 headers) but adds a versioned header block, a
+     * length-prefixed value column written in bulk, and a footer, so the
+     * file can be memory-mapped and read back with {@link ColumnarFile#open}.
+     * <p>
+     * Repeated headers are dictionary encoded, so each unique header is only
+     * written once (see {@link ColumnarFile#headerCodes()}).
      */
     public static void dataCopy(List<String> headers, List<Integer> values,
                                 Path out) throws IOException {
@@ -101,21 +928,146 @@ public final class IOUtilities {
         Preconditions.checkNotNull(headers);
         Preconditions.checkNotNull(values);
         Preconditions.checkNotNull(out);
+
         Preconditions.checkArgument(headers.size() == values.size());
 
-        try (DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(out.toFile()))) {
+        int[] ints = new int[values.size()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = values.get(i);
+        }
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.write(out, headers, IntBuffer.wrap(ints));
+        } finally {
+            op.finish(null, out);
+        }
+    }
 
-            for (int i = 0; i < headers.size(); i++) {
-                outputStream.writeUTF(headers.get(i));
-            }
+    /**
+     * Writes {@code headers} and {@code values} as a {@link ColumnarFile}
+     * without boxing. The values are copied in bulk straight from the array
+     * to a buffered channel.
+     */
+    public static void dataCopy(List<String> headers, int[] values, Path out) throws IOException {
+        Preconditions.checkNotNull(values);
+        dataCopy(headers, IntBuffer.wrap(values), out);
+    }
 
-            for (int i = 0; i < values.size(); i++) {
-                outputStream.writeInt(Integer.valueOf(values.get(i)));
-            }
+    /**
+     * Writes {@code headers} and the remaining values in {@code values} as a
+     * {@link ColumnarFile}. The buffer's position is not changed.
+     */
+    public static void dataCopy(List<String> headers, IntBuffer values, Path out) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkArgument(headers.size() == values.remaining());
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.write(out, headers, values);
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * Writes {@code headers} and {@code values} as a {@link ColumnarFile},
+     * consuming the stream as it is written.
+     * <p>
+     * The size of a stream isn't known until it has been consumed, so unlike
+     * the other overloads, the number of headers is not required to match
+     * the number of values.
+     */
+    public static void dataCopy(List<String> headers, IntStream values, Path out) throws IOException {
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.write(out, headers, values);
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * Writes {@code headers} and {@code values} as a block compressed
+     * {@link ColumnarFile}. The file is split into blocks which are
+     * compressed in parallel; {@link ColumnarFile#open(Path)} decompresses it.
+     */
+    public static void dataCopy(List<String> headers, int[] values, Path out,
+                                BlockCompression compression) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkNotNull(compression);
+        Preconditions.checkArgument(headers.size() == values.length);
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", compression.getBlockSize());
+        try {
+            ColumnarFile.write(out, headers, IntBuffer.wrap(values), compression);
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * Writes {@code headers} and {@code values} as a {@link ColumnarFile},
+     * encoding the values in blocks rather than as fixed 4 byte ints.
+     * <p>
+     * Each block of values is stored as zigzag varints, deltas,
+     * deltas-of-deltas or bit-packed offsets from the block's minimum,
+     * whichever a sample of the block suggests is smallest. Counters, sorted
+     * ids and small values shrink considerably. {@link ColumnarFile#open}
+     * decodes the values.
+     */
+    public static void dataCopyEncoded(List<String> headers, int[] values, Path out) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkArgument(headers.size() == values.length);
+        final IOMetrics.Operation op = IOMetrics.start("dataCopyEncoded", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.writeEncoded(out, headers, IntBuffer.wrap(values));
+        } finally {
+            op.finish(null, out);
+        }
+    }
 
+    /**
+     * @see #dataCopy(List, int[], Path)
+     */
+    public static void dataCopy(List<String> headers, long[] values, Path out) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkArgument(headers.size() == values.length);
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.write(out, headers, LongBuffer.wrap(values));
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * @see #dataCopy(List, int[], Path)
+     */
+    public static void dataCopy(List<String> headers, double[] values, Path out) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkArgument(headers.size() == values.length);
+        final IOMetrics.Operation op = IOMetrics.start("dataCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            ColumnarFile.write(out, headers, DoubleBuffer.wrap(values));
+        } finally {
+            op.finish(null, out);
         }
     }
 
+    /**
+     * Writes {@code headers} followed by {@code values} with an
+     * {@link ObjectOutputStream}.
+     * <p>
+     * An {@link ObjectOutputStream} remembers every object it writes, so that
+     * writing the same object again only writes a handle. That table (and the
+     * matching table in the reader) would otherwise grow to hold every object
+     * in the file, so the stream is {@link ObjectOutputStream#reset() reset}
+     * every {@link #OBJECT_RESET_INTERVAL} objects. Use
+     * {@link ObjectReader} to read the file back one object at a time.
+     */
     public static void objectCopy(List<String> headers,
                                   List<Serializable> values, Path out) throws IOException {
 
@@ -125,30 +1077,224 @@ public final class IOUtilities {
 
         Preconditions.checkArgument(headers.size() == values.size());
 
-        try (ObjectOutputStream outputStream = new ObjectOutputStream(
-                new FileOutputStream(out.toFile()))) {
-
-            for (int i = 0; i < headers.size(); i++) {
-                outputStream.writeObject(headers.get(i));
+        final IOMetrics.Operation op = IOMetrics.start("objectCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(out), DEFAULT_BUFFER_SIZE)) {
+                objectCopy(headers, values, os);
             }
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * Writes the same objects as {@link #objectCopy(List, List, Path)},
+     * compressed with a {@link BlockCompressedOutputStream}: the stream is
+     * split into blocks which are compressed in parallel. Read the file back
+     * with {@link ObjectReader}.
+     */
+    public static void objectCopy(List<String> headers, List<Serializable> values, Path out,
+                                  BlockCompression compression) throws IOException {
 
-            for (int i = 0; i < values.size(); i++) {
-                outputStream.writeObject(values.get(i));
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(compression);
+
+        Preconditions.checkArgument(headers.size() == values.size());
+
+        final IOMetrics.Operation op = IOMetrics.start("objectCopy", compression.getBlockSize());
+        try {
+            try (OutputStream file = Files.newOutputStream(out);
+                 OutputStream os = new BlockCompressedOutputStream(file, compression)) {
+                objectCopy(headers, values, os);
             }
+        } finally {
+            op.finish(null, out);
+        }
+    }
+
+    /**
+     * Writes the objects to {@code out}, flushing but not closing it. The
+     * caller owns (and closes) {@code out}, so it isn't leaked if the
+     * {@link ObjectOutputStream} header can't be written.
+     */
+    private static void objectCopy(List<String> headers, List<Serializable> values,
+                                   OutputStream out) throws IOException {
+        ObjectOutputStream outputStream = new ObjectOutputStream(out);
+
+        int written = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            written = resetIfDue(outputStream, written);
+            outputStream.writeObject(headers.get(i));
+        }
+
+        for (int i = 0; i < values.size(); i++) {
+            written = resetIfDue(outputStream, written);
+            outputStream.writeObject(values.get(i));
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Resets {@code out} before the next object is written, once every
+     * {@link #OBJECT_RESET_INTERVAL} objects. Resetting before (rather than
+     * after) an object means a file never ends with a reset marker.
+     *
+     * @return the number of objects written, including the next one
+     */
+    private static int resetIfDue(ObjectOutputStream out, int written) throws IOException {
+        if (written > 0 && written % OBJECT_RESET_INTERVAL == 0) {
+            out.reset();
+        }
+        return written + 1;
+    }
+
+    /**
+     * Writes {@code headers} and {@code values} as a {@link CodecFile}, using
+     * the codecs in {@code registry} rather than Java serialization.
+     * <p>
+     * Registered types are written as a small tag followed by their fields
+     * (integers as varints). Values of unregistered {@code Serializable}
+     * types fall back to Java serialization, so any list accepted by
+     * {@link #objectCopy(List, List, Path)} can be written.
+     *
+     * @see CodecRegistry#defaults()
+     */
+    public static void objectCopy(List<String> headers, List<?> values, Path out,
+                                  CodecRegistry registry) throws IOException {
+        Preconditions.checkNotNull(headers);
+        Preconditions.checkNotNull(values);
+        Preconditions.checkArgument(headers.size() == values.size());
+        final IOMetrics.Operation op = IOMetrics.start("objectCopy", DEFAULT_BUFFER_SIZE);
+        try {
+            CodecFile.write(out, headers, values, registry);
+        } finally {
+            op.finish(null, out);
         }
     }
 
     /**
      * Tokenize breaks input into tokens using {@code regex} as the delimiter.
+     * <p>
+     * This used to wrap {@code input} in a {@link java.util.Scanner}, which
+     * runs the regex engine for every delimiter. {@link Tokenizer} returns
+     * the same tokens, but scans simple delimiters ({@code ","},
+     * {@code "[,;]"}, {@code "\\s+"}) without a regex.
      */
     public static List<String> tokenize(String input, Pattern regex) {
-        List<String> lst = new ArrayList<>();
-        try (Scanner s = new Scanner(input)) {
-            s.useDelimiter(regex);
-            while (s.hasNext()) {
-                lst.add(s.next());
-            }
+        Preconditions.checkNotNull(input);
+        return Tokenizer.of(regex).split(input);
+    }
+
+    /**
+     * Calls {@code visitor} with the {@code [start, end)} offsets of each
+     * token in {@code input}, without creating a {@code String} per token.
+     *
+     * @see #tokenize(String, Pattern)
+     */
+    public static void tokenize(CharSequence input, Pattern regex, Tokenizer.TokenVisitor visitor) {
+        Tokenizer.of(regex).tokenize(input, visitor);
+    }
+
+    /**
+     * Lazily tokenizes the file at {@code path}, decoded with
+     * {@code charset}, using {@code regex} as the delimiter.
+     * <p>
+     * The file is never read into memory as a whole, so files larger than the
+     * heap can be tokenized. When the delimiter is simple and ASCII (i.e.,
+     * {@code ","} or {@code "\\s+"}) and {@code charset} is ASCII
+     * transparent (UTF-8, ISO-8859-*), the file is memory-mapped and the
+     * delimiters are found in the raw bytes. Each token is decoded only when
+     * its characters are used, so counting or skipping tokens costs no
+     * decoding. Other delimiters and charsets are decoded and tokenized as
+     * the stream is consumed.
+     * <p>
+     * Tokens are {@link CharSequence}s, not necessarily {@code String}s.
+     * Tokens from the same stream equal each other (and hash alike) when
+     * their characters do, so {@code distinct()} and {@code toSet()} work,
+     * but a token may never equal a {@code String}. Compare tokens with
+     * strings using {@link String#contentEquals(CharSequence)}, e.g.
+     * {@code filter("x"::contentEquals)}, or map them with
+     * {@code CharSequence::toString} first.
+     * <p>
+     * The returned stream should be closed.
+     *
+     * @see #tokenize(String, Pattern)
+     */
+    public static Stream<CharSequence> tokenize(Path path, Pattern regex, Charset charset) throws IOException {
+        Preconditions.checkNotNull(path);
+        Preconditions.checkNotNull(charset);
+        final Tokenizer tokenizer = Tokenizer.of(regex);
+        final boolean[] delimiters = tokenizer.byteDelimiters();
+        if (delimiters != null && ByteScanner.isAsciiTransparent(charset)) {
+            return StreamSupport.stream(
+                    new MappedTokenSpliterator(map(path), delimiters, tokenizer.isGreedy(), charset), false);
         }
-        return lst;
+        final Scanner scanner = new Scanner(Channels.newReader(FileChannel.open(path, StandardOpenOption.READ),
+                charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE),
+                -1));
+        scanner.useDelimiter(regex);
+        return scanner.tokens().map(CharSequence.class::cast).onClose(scanner::close);
+    }
+
+    /**
+     * @see #parallelLines(Path, Charset)
+     */
+    public static Stream<String> parallelLines(Path path) throws IOException {
+        return parallelLines(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a parallel stream of the lines in {@code path} which splits
+     * evenly across threads.
+     * <p>
+     * The file is divided by byte range, each split realigned to the start
+     * of a line, and each range is read with positional reads (see
+     * {@link LineSpliterator}). Charsets which aren't ASCII transparent
+     * can't be split by byte, and fall back to {@link Files#lines}.
+     * <p>
+     * The returned stream must be closed.
+     */
+    public static Stream<String> parallelLines(Path path, Charset charset) throws IOException {
+        Preconditions.checkNotNull(path);
+        Preconditions.checkNotNull(charset);
+        if (!ByteScanner.isAsciiTransparent(charset)) {
+            return Files.lines(path, charset).parallel();
+        }
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return StreamSupport.stream(new LineSpliterator(channel, charset), true)
+                    .onClose(() -> {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds every path below {@code root}, up to {@code maxDepth} directory
+     * levels deep, whose path relative to {@code root} matches {@code glob}.
+     * Subdirectories are walked in parallel and matches are returned lazily,
+     * in no particular order.
+     * <p>
+     * The returned stream must be closed.
+     *
+     * @see ParallelFileWalker
+     */
+    public static Stream<Path> find(Path root, String glob, int maxDepth) {
+        return ParallelFileWalker.newBuilder()
+                .setGlob(glob)
+                .setMaxDepth(maxDepth)
+                .build()
+                .walk(root);
     }
 }
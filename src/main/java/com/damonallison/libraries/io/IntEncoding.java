@@ -0,0 +1,373 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lightweight encodings for blocks of {@code int}s.
+ * <p>
+ * General purpose compression (i.e., {@link java.util.zip.Deflater}) finds
+ * repeated byte sequences. Columns of integers are better served by
+ * encodings which exploit their numeric structure:
+ * <ul>
+ * <li>{@link #VARINT}: small values take fewer bytes (zigzag varints).</li>
+ * <li>{@link #DELTA}: sorted or slowly changing values are stored as the
+ * (small) differences between neighbors.</li>
+ * <li>{@link #DELTA_OF_DELTA}: values which change at a steady rate
+ * (timestamps, counters) are stored as the change in the difference, which
+ * is usually zero.</li>
+ * <li>{@link #FOR} ("frame of reference"): values within a narrow range are
+ * stored as their offset from the block's minimum, bit-packed at the width
+ * of the largest offset.</li>
+ * <li>{@link #DELTA_FOR}: the differences between neighbors, bit-packed.</li>
+ * </ul>
+ * Values are encoded in blocks of up to {@link #BLOCK_VALUES}. The encoding
+ * is chosen per block by estimating each encoding's size from a sample of
+ * the block (a few runs of consecutive values), so a column can switch
+ * encodings as its data changes.
+ * <p>
+ * Every block starts with its encoding and value count:
+ * <pre>
+ * byte    encoding
+ * varint  value count (n)
+ * PLAIN           int (x n)
+ * VARINT          zigzag varint (x n)
+ * DELTA           zigzag varint first, zigzag varint delta (x n - 1)
+ * DELTA_OF_DELTA  zigzag varint first, zigzag varint delta, zigzag varint delta of delta (x n - 2)
+ * FOR             zigzag varint min, byte width, packed (x n)
+ * DELTA_FOR       zigzag varint first, zigzag varint min delta, byte width, packed (x n - 1)
+ * </pre>
+ * Packed values are written least significant bit first, followed by 7
+ * bytes of padding so the decoder can always read a whole {@code long}.
+ * Differences are computed with {@code int} (wrapping) arithmetic, so any
+ * sequence of values round trips.
+ * <p>
+ * Instances hold scratch space and are not thread safe.
+ */
+final class IntEncoding {
+
+    static final int BLOCK_VALUES = 1024;
+
+    static final byte PLAIN = 0;
+    static final byte VARINT = 1;
+    static final byte DELTA = 2;
+    static final byte DELTA_OF_DELTA = 3;
+    static final byte FOR = 4;
+    static final byte DELTA_FOR = 5;
+
+    /**
+     * The largest possible encoded block (a block of 5 byte varints).
+     */
+    static final int MAX_BLOCK_BYTES = 1 + Varints.MAX_INT_BYTES
+            + BLOCK_VALUES * Varints.MAX_INT_BYTES + Varints.MAX_INT_BYTES;
+
+    private static final int SAMPLE_RUNS = 8;
+    private static final int SAMPLE_RUN_LENGTH = 16;
+    private static final int PADDING = Long.BYTES - 1;
+
+    private final int[] scratch = new int[BLOCK_VALUES];
+
+    /**
+     * Encodes {@code values[0, n)} as a single block at {@code out}'s
+     * position. {@code out} must have at least {@link #MAX_BLOCK_BYTES}
+     * remaining.
+     *
+     * @return the encoding used
+     */
+    byte encode(int[] values, int n, ByteBuffer out) {
+        Preconditions.checkArgument(n > 0 && n <= values.length);
+        final byte encoding = choose(values, n);
+        encode(values, n, encoding, out);
+        return encoding;
+    }
+
+    /**
+     * Encodes {@code values[0, n)} as a single block with {@code encoding}.
+     */
+    void encode(int[] values, int n, byte encoding, ByteBuffer out) {
+        Preconditions.checkArgument(n > 0 && n <= BLOCK_VALUES && n <= values.length);
+        Preconditions.checkArgument(out.remaining() >= MAX_BLOCK_BYTES);
+        Preconditions.checkArgument(encoding >= PLAIN && encoding <= DELTA_FOR, "unknown encoding %s", encoding);
+
+        out.put(encoding);
+        Varints.put(out, n);
+        switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < n; i++) {
+                    out.putInt(values[i]);
+                }
+                break;
+            case VARINT:
+                for (int i = 0; i < n; i++) {
+                    Varints.put(out, Varints.zigZag(values[i]) & 0xFFFFFFFFL);
+                }
+                break;
+            case DELTA:
+                putSigned(out, values[0]);
+                for (int i = 1; i < n; i++) {
+                    putSigned(out, values[i] - values[i - 1]);
+                }
+                break;
+            case DELTA_OF_DELTA:
+                putSigned(out, values[0]);
+                if (n > 1) {
+                    putSigned(out, values[1] - values[0]);
+                }
+                for (int i = 2; i < n; i++) {
+                    putSigned(out, (values[i] - values[i - 1]) - (values[i - 1] - values[i - 2]));
+                }
+                break;
+            case FOR:
+                System.arraycopy(values, 0, scratch, 0, n);
+                packFrame(scratch, n, out);
+                break;
+            case DELTA_FOR:
+                putSigned(out, values[0]);
+                for (int i = 1; i < n; i++) {
+                    scratch[i - 1] = values[i] - values[i - 1];
+                }
+                packFrame(scratch, n - 1, out);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+    }
+
+    /**
+     * Decodes one block at {@code in}'s position into {@code out}, starting
+     * at {@code offset}.
+     *
+     * @return the number of values decoded
+     * @throws IllegalArgumentException if the block is malformed or doesn't
+     *                                  fit in {@code out}
+     */
+    int decode(ByteBuffer in, int[] out, int offset) {
+        final byte encoding = in.get();
+        final long count = Varints.get(in);
+        Preconditions.checkArgument(count > 0 && count <= BLOCK_VALUES && count <= out.length - offset,
+                "bad block length %s", count);
+        final int n = (int) count;
+        switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < n; i++) {
+                    out[offset + i] = in.getInt();
+                }
+                break;
+            case VARINT:
+                for (int i = 0; i < n; i++) {
+                    out[offset + i] = getSigned(in);
+                }
+                break;
+            case DELTA: {
+                int value = getSigned(in);
+                out[offset] = value;
+                for (int i = 1; i < n; i++) {
+                    value += getSigned(in);
+                    out[offset + i] = value;
+                }
+                break;
+            }
+            case DELTA_OF_DELTA: {
+                int value = getSigned(in);
+                out[offset] = value;
+                if (n > 1) {
+                    int delta = getSigned(in);
+                    value += delta;
+                    out[offset + 1] = value;
+                    for (int i = 2; i < n; i++) {
+                        delta += getSigned(in);
+                        value += delta;
+                        out[offset + i] = value;
+                    }
+                }
+                break;
+            }
+            case FOR:
+                unpackFrame(in, n, out, offset);
+                break;
+            case DELTA_FOR: {
+                out[offset] = getSigned(in);
+                unpackFrame(in, n - 1, out, offset + 1);
+                for (int i = 1; i < n; i++) {
+                    out[offset + i] += out[offset + i - 1];
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+        return n;
+    }
+
+    /**
+     * Estimates the size of each encoding from a sample of
+     * {@code values[0, n)} and returns the smallest. Ties go to the encoding
+     * which is fastest to decode.
+     */
+    static byte choose(int[] values, int n) {
+        final int runs;
+        final int runLength;
+        if (n <= SAMPLE_RUNS * SAMPLE_RUN_LENGTH) {
+            runs = 1;
+            runLength = n;
+        } else {
+            runs = SAMPLE_RUNS;
+            runLength = SAMPLE_RUN_LENGTH;
+        }
+
+        long varintBytes = 0;
+        long deltaBytes = 0;
+        long dodBytes = 0;
+        int sampled = 0;
+        int deltas = 0;
+        int dods = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int minDelta = Integer.MAX_VALUE;
+        int maxDelta = Integer.MIN_VALUE;
+        for (int r = 0; r < runs; r++) {
+            final int start = runs == 1 ? 0 : (int) ((long) r * (n - runLength) / (runs - 1));
+            int previousDelta = 0;
+            for (int i = start; i < start + runLength; i++) {
+                final int v = values[i];
+                sampled++;
+                varintBytes += Varints.size(Varints.zigZag(v) & 0xFFFFFFFFL);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                if (i > start) {
+                    final int delta = v - values[i - 1];
+                    deltas++;
+                    deltaBytes += Varints.size(Varints.zigZag(delta) & 0xFFFFFFFFL);
+                    minDelta = Math.min(minDelta, delta);
+                    maxDelta = Math.max(maxDelta, delta);
+                    if (i > start + 1) {
+                        dods++;
+                        dodBytes += Varints.size(Varints.zigZag(delta - previousDelta) & 0xFFFFFFFFL);
+                    }
+                    previousDelta = delta;
+                }
+            }
+        }
+
+        byte best = PLAIN;
+        long bestBytes = 4L * n;
+
+        // Bit-packed encodings decode fastest, so they are considered first.
+        long forBytes = Varints.MAX_INT_BYTES + 1 + packedBytes(n, width(min, max));
+        if (forBytes < bestBytes) {
+            best = FOR;
+            bestBytes = forBytes;
+        }
+        if (deltas > 0) {
+            long deltaForBytes = 2 * Varints.MAX_INT_BYTES + 1 + packedBytes(n - 1, width(minDelta, maxDelta));
+            if (deltaForBytes < bestBytes) {
+                best = DELTA_FOR;
+                bestBytes = deltaForBytes;
+            }
+        }
+        long varint = varintBytes * n / sampled;
+        if (varint < bestBytes) {
+            best = VARINT;
+            bestBytes = varint;
+        }
+        if (deltas > 0) {
+            long delta = Varints.MAX_INT_BYTES + deltaBytes * (n - 1) / deltas;
+            if (delta < bestBytes) {
+                best = DELTA;
+                bestBytes = delta;
+            }
+        }
+        if (dods > 0) {
+            long dod = 2 * Varints.MAX_INT_BYTES + dodBytes * (n - 2) / dods;
+            if (dod < bestBytes) {
+                best = DELTA_OF_DELTA;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of bits needed for offsets in {@code [min, max]}.
+     */
+    private static int width(int min, int max) {
+        long range = (long) max - min;
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    private static long packedBytes(int n, int width) {
+        return width == 0 ? 0 : ((long) n * width + 7) / 8 + PADDING;
+    }
+
+    private static void putSigned(ByteBuffer out, int n) {
+        Varints.put(out, Varints.zigZag(n) & 0xFFFFFFFFL);
+    }
+
+    private static int getSigned(ByteBuffer in) {
+        return Varints.unZigZag((int) Varints.get(in));
+    }
+
+    /**
+     * Writes {@code values[0, n)} as a minimum, a bit width and the
+     * bit-packed offsets from the minimum.
+     */
+    private static void packFrame(int[] values, int n, ByteBuffer out) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        final int width = n == 0 ? 0 : width(min, max);
+        putSigned(out, n == 0 ? 0 : min);
+        out.put((byte) width);
+        if (width == 0) {
+            return;
+        }
+        long acc = 0;
+        int bits = 0;
+        for (int i = 0; i < n; i++) {
+            acc |= ((values[i] - min) & 0xFFFFFFFFL) << bits;
+            bits += width;
+            while (bits >= 8) {
+                out.put((byte) acc);
+                acc >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            out.put((byte) acc);
+        }
+        for (int i = 0; i < PADDING; i++) {
+            out.put((byte) 0);
+        }
+    }
+
+    /**
+     * Reads a frame written by {@link #packFrame} into
+     * {@code out[offset, offset + n)}.
+     */
+    private static void unpackFrame(ByteBuffer in, int n, int[] out, int offset) {
+        final int min = getSigned(in);
+        final int width = in.get();
+        Preconditions.checkArgument(width >= 0 && width <= 32, "bad bit width %s", width);
+        if (width == 0) {
+            for (int i = 0; i < n; i++) {
+                out[offset + i] = min;
+            }
+            return;
+        }
+        final int start = in.position();
+        final int length = (int) packedBytes(n, width);
+        Preconditions.checkArgument(length <= in.remaining(), "packed block is truncated");
+        final ByteBuffer le = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final long mask = (1L << width) - 1;
+        long bit = 0;
+        for (int i = 0; i < n; i++, bit += width) {
+            long word = le.getLong(start + (int) (bit >>> 3));
+            out[offset + i] = min + (int) ((word >>> (bit & 7)) & mask);
+        }
+        in.position(start + length);
+    }
+}
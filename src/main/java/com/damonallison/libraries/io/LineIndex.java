@@ -0,0 +1,311 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index of line offsets in a text file, for reading any line (or page of
+ * lines) without scanning the file from the start.
+ * <p>
+ * Storing the offset of every line would take 8 bytes per line. Instead,
+ * the offset of every {@code interval}th line is sampled. Reading line
+ * {@code n} seeks to the sample at or before it and skips at most
+ * {@code interval - 1} lines. The samples are stored in a small "sidecar"
+ * file next to the indexed file ({@link #sidecar(Path)}), as varint encoded
+ * deltas between samples:
+ * <pre>
+ * int      MAGIC
+ * varint   VERSION
+ * varlong  indexed file size
+ * varlong  indexed file last modified time (nanos)
+ * varlong  time the indexed file was stamped (nanos)
+ * varint   interval
+ * varlong  line count
+ * varlong  sample delta (x ceil(line count / interval))
+ * </pre>
+ * The size and modification time detect an index which is out of date (see
+ * {@link FileStamp}). A file modified too recently for its modification time
+ * to be trusted is waited out before it is indexed.
+ * <p>
+ * Lines are split as by {@link java.io.BufferedReader#readLine()}. The file
+ * must be encoded with an ASCII transparent charset (UTF-8, ISO-8859-*, see
+ * {@link ByteScanner#isAsciiTransparent}).
+ */
+public final class LineIndex {
+
+    /**
+     * "DLIX"
+     */
+    static final int MAGIC = 0x444C4958;
+    static final int VERSION = 2;
+    static final String SIDECAR_SUFFIX = ".lidx";
+
+    /**
+     * The default number of lines between samples.
+     */
+    public static final int DEFAULT_INTERVAL = 128;
+
+    private final Path file;
+    private final long size;
+    private final FileStamp stamp;
+    private final int interval;
+    private final long lineCount;
+
+    /**
+     * {@code samples[i]} is the offset of line {@code i * interval}.
+     */
+    private final long[] samples;
+
+    private LineIndex(Path file, long size, FileStamp stamp, int interval, long lineCount, long[] samples) {
+        this.file = file;
+        this.size = size;
+        this.stamp = stamp;
+        this.interval = interval;
+        this.lineCount = lineCount;
+        this.samples = samples;
+    }
+
+    /**
+     * Collects line offsets as a file is read.
+     */
+    static final class Builder {
+        private final Path file;
+        private final int interval;
+        private long[] samples = new long[64];
+        private int sampleCount;
+        private long lineCount;
+
+        Builder(Path file, int interval) {
+            Preconditions.checkNotNull(file);
+            Preconditions.checkArgument(interval > 0, "interval must be > 0");
+            this.file = file;
+            this.interval = interval;
+        }
+
+        /**
+         * Records the next line, which starts at {@code offset}.
+         */
+        void add(long offset) {
+            if (lineCount % interval == 0) {
+                if (sampleCount == samples.length) {
+                    samples = Arrays.copyOf(samples, sampleCount * 2);
+                }
+                samples[sampleCount++] = offset;
+            }
+            lineCount++;
+        }
+
+        /**
+         * @param size  the number of bytes read
+         * @param stamp {@code file}'s stamp, taken before it was read
+         */
+        LineIndex build(long size, FileStamp stamp) {
+            return new LineIndex(file, size, stamp, interval, lineCount,
+                    Arrays.copyOf(samples, sampleCount));
+        }
+    }
+
+    /**
+     * @see #build(Path, int)
+     */
+    public static LineIndex build(Path file) throws IOException {
+        return build(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Indexes {@code file} in a single pass, sampling the offset of every
+     * {@code interval}th line. The index is not written; see
+     * {@link #write()}.
+     */
+    public static LineIndex build(Path file, int interval) throws IOException {
+        Preconditions.checkNotNull(file);
+        Builder builder = new Builder(file, interval);
+        // Stamp before scanning, so a file modified during the scan is stale.
+        final FileStamp stamp = FileStamp.settle(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            LineReader reader = new LineReader(channel, IOUtilities.DEFAULT_BUFFER_SIZE);
+            while (reader.next() != null) {
+                builder.add(reader.position());
+            }
+            return builder.build(size, stamp);
+        }
+    }
+
+    /**
+     * Returns the index for {@code file}, reading its sidecar if it is up to
+     * date. Otherwise, the file is indexed and the sidecar (re)written.
+     */
+    public static LineIndex open(Path file) throws IOException {
+        Preconditions.checkNotNull(file);
+        if (Files.exists(sidecar(file))) {
+            try {
+                LineIndex index = read(file);
+                if (index.isCurrent()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // Corrupt or from another version; rebuild it.
+            }
+        }
+        LineIndex index = build(file);
+        index.write();
+        return index;
+    }
+
+    /**
+     * @return the path of the sidecar file holding {@code file}'s index.
+     */
+    public static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Writes this index to {@link #sidecar(Path)}.
+     */
+    public void write() throws IOException {
+        try (OutputStream os = Files.newOutputStream(sidecar(file))) {
+            CodecOutput out = new CodecOutput(os, CodecRegistry.defaults());
+            out.writeInt(MAGIC);
+            out.writeVarInt(VERSION);
+            out.writeVarLong(size);
+            out.writeVarLong(stamp.modified);
+            out.writeVarLong(stamp.recorded);
+            out.writeVarInt(interval);
+            out.writeVarLong(lineCount);
+            long previous = 0;
+            for (long sample : samples) {
+                out.writeVarLong(sample - previous);
+                previous = sample;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads the index of {@code file} from its sidecar. The index may be out
+     * of date; see {@link #isCurrent()}.
+     *
+     * @throws IOException if the sidecar doesn't exist, is corrupt, or was
+     *                     written by another version of this class
+     */
+    public static LineIndex read(Path file) throws IOException {
+        Preconditions.checkNotNull(file);
+        final Path sidecar = sidecar(file);
+        try (InputStream is = Files.newInputStream(sidecar)) {
+            CodecInput in = new CodecInput(is, CodecRegistry.defaults());
+            if (in.readInt() != MAGIC) {
+                throw new IOException(sidecar + " is not a line index");
+            }
+            final int version = in.readVarInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s has version %d, only version %d is supported",
+                        sidecar, version, VERSION));
+            }
+            final long size = in.readVarLong();
+            final FileStamp stamp = new FileStamp(size, in.readVarLong(), in.readVarLong());
+            final int interval = in.readVarInt();
+            final long lineCount = in.readVarLong();
+            if (interval <= 0 || lineCount < 0 || lineCount > size) {
+                throw new IOException(sidecar + " is corrupt");
+            }
+            final long sampleCount = (lineCount + interval - 1) / interval;
+            if (sampleCount > Integer.MAX_VALUE - 8) {
+                throw new IOException(sidecar + " is corrupt (too many samples)");
+            }
+            long[] samples = new long[(int) sampleCount];
+            long offset = 0;
+            for (int i = 0; i < samples.length; i++) {
+                offset += in.readVarLong();
+                if (offset < 0 || offset >= size || (i > 0 && offset <= samples[i - 1])) {
+                    throw new IOException(sidecar + " is corrupt (bad offset)");
+                }
+                samples[i] = offset;
+            }
+            if (!in.isAtEnd()) {
+                throw new IOException(sidecar + " is corrupt (trailing bytes)");
+            }
+            return new LineIndex(file, size, stamp, interval, lineCount, samples);
+        }
+    }
+
+    /**
+     * @return {@code true} if the indexed file has the same size and
+     * modification time it had when it was indexed, and that modification
+     * time can be trusted.
+     */
+    public boolean isCurrent() throws IOException {
+        return stamp.size == size && stamp.matches(file);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public long lineCount() {
+        return lineCount;
+    }
+
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * @return line {@code n} (zero based), decoded as UTF-8.
+     */
+    public String line(long n) throws IOException {
+        Preconditions.checkArgument(n >= 0 && n < lineCount, "line %s is outside of [0, %s)", n, lineCount);
+        return lines(n, 1, StandardCharsets.UTF_8).get(0);
+    }
+
+    /**
+     * Reads up to {@code count} lines starting with line {@code first} (zero
+     * based). Fewer lines are returned if the file ends first.
+     * <p>
+     * This seeks to the sample at or before {@code first}, so at most
+     * {@link #interval()} - 1 lines are read and discarded.
+     *
+     * @throws IOException if the file has fewer lines than when it was
+     *                     indexed
+     */
+    public List<String> lines(long first, int count, Charset charset) throws IOException {
+        Preconditions.checkArgument(first >= 0 && first <= lineCount,
+                "first %s is outside of [0, %s]", first, lineCount);
+        Preconditions.checkArgument(count >= 0, "count must be >= 0");
+        Preconditions.checkNotNull(charset);
+        final int n = (int) Math.min(count, lineCount - first);
+        List<String> lines = new ArrayList<>(n);
+        if (n == 0) {
+            return lines;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(samples[(int) (first / interval)]);
+            LineReader reader = new LineReader(channel, IOUtilities.DEFAULT_BUFFER_SIZE);
+            for (long skip = first % interval; skip > 0; skip--) {
+                if (reader.next() == null) {
+                    throw new IOException(file + " has changed since it was indexed");
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                LineSlice line = reader.next();
+                if (line == null) {
+                    throw new IOException(file + " has changed since it was indexed");
+                }
+                lines.add(line.toString(charset));
+            }
+        }
+        return lines;
+    }
+}
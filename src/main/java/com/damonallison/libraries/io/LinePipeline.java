@@ -0,0 +1,344 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a text file line by line with reading, transforming, and writing
+ * running concurrently on separate threads.
+ * <p>
+ * The pipeline has three stages, connected by bounded queues:
+ * <ol>
+ * <li>A reader thread splits the input into lines (see {@link LineReader})
+ * and groups them into batches.</li>
+ * <li>Zero or more worker threads apply the {@link LineTransform} to each
+ * batch. With zero workers, the reader applies the transform itself.</li>
+ * <li>A writer thread writes the transformed batches.</li>
+ * </ol>
+ * Batches are handed to the writer in the order they were read, along with a
+ * future which completes when a worker has transformed them. The writer waits
+ * on each batch in turn, so output order matches input order even though
+ * workers finish batches out of order. The bounded queues keep a fast reader
+ * from buffering the whole file in memory.
+ * <p>
+ * With more than one worker, the transform is called concurrently and must be
+ * thread safe.
+ */
+public final class LinePipeline {
+
+    /**
+     * A batch is handed off once it reaches this many bytes, regardless of
+     * its line count.
+     */
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    private final int workers;
+    private final int batchLines;
+    private final int queueCapacity;
+
+    private LinePipeline(int workers, int batchLines, int queueCapacity) {
+        this.workers = workers;
+        this.batchLines = batchLines;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getBatchLines() {
+        return batchLines;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Copies {@code in} to {@code out}, passing each line through
+     * {@code transform}. Each line written is followed by the platform's line
+     * separator.
+     * <p>
+     * {@code in} must be encoded with an ASCII transparent charset (UTF-8,
+     * ISO-8859-*, etc.).
+     */
+    public void copy(Path in, Path out, LineTransform transform) throws IOException {
+
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkNotNull(transform);
+
+        final byte[] separator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers + 2,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("line-pipeline-%d")
+                        .setDaemon(true)
+                        .build());
+
+        // Batches waiting for a worker.
+        final BlockingQueue<Batch> work = new ArrayBlockingQueue<>(queueCapacity);
+        // Every batch, in read order, waiting to be written.
+        final BlockingQueue<Batch> ordered = new ArrayBlockingQueue<>(queueCapacity + workers + 1);
+        // Written batches, available for reuse by the reader.
+        final Queue<Batch> free = new ConcurrentLinkedQueue<>();
+
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(out,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            try {
+                final Future<?> reader = executor.submit(() -> {
+                    try {
+                        LineReader lines = new LineReader(source, IOUtilities.DEFAULT_BUFFER_SIZE);
+                        Batch batch = newBatch(free, separator);
+                        LineSlice line;
+                        while ((line = lines.next()) != null) {
+                            batch.add(line);
+                            if (batch.lines == batchLines || batch.inSize >= MAX_BATCH_BYTES) {
+                                dispatch(batch, transform, work, ordered);
+                                batch = newBatch(free, separator);
+                            }
+                        }
+                        if (batch.lines > 0) {
+                            dispatch(batch, transform, work, ordered);
+                        }
+                        for (int i = 0; i < workers; i++) {
+                            work.put(Batch.END);
+                        }
+                        ordered.put(Batch.END);
+                    } catch (Throwable t) {
+                        Batch failed = new Batch(separator);
+                        failed.done.completeExceptionally(t);
+                        ordered.put(failed);
+                    }
+                    return null;
+                });
+
+                for (int i = 0; i < workers; i++) {
+                    executor.submit(() -> {
+                        Batch batch;
+                        while ((batch = work.take()) != Batch.END) {
+                            batch.transform(transform);
+                        }
+                        return null;
+                    });
+                }
+
+                final Future<?> writer = executor.submit(() -> {
+                    Batch batch;
+                    while ((batch = ordered.take()) != Batch.END) {
+                        batch.done.get();
+                        ByteBuffer buf = ByteBuffer.wrap(batch.out, 0, batch.outSize);
+                        while (buf.hasRemaining()) {
+                            target.write(buf);
+                        }
+                        free.offer(batch);
+                    }
+                    return null;
+                });
+
+                writer.get();
+                reader.get();
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("line pipeline interrupted");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Batch newBatch(Queue<Batch> free, byte[] separator) {
+        Batch batch = free.poll();
+        if (batch == null) {
+            return new Batch(separator);
+        }
+        batch.reset();
+        return batch;
+    }
+
+    private void dispatch(Batch batch, LineTransform transform,
+                          BlockingQueue<Batch> work,
+                          BlockingQueue<Batch> ordered) throws InterruptedException {
+        ordered.put(batch);
+        if (workers == 0) {
+            batch.transform(transform);
+        } else {
+            work.put(batch);
+        }
+    }
+
+    /**
+     * Unwraps the failure of a pipeline stage. Stage failures are nested in
+     * {@link ExecutionException}s, once per stage the failure passed thru.
+     */
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e;
+        while (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * A group of input lines, copied out of the reader's buffer, and the
+     * output produced by transforming them.
+     */
+    private static final class Batch implements LineTransform.Sink {
+
+        /**
+         * Marks the end of the input.
+         */
+        static final Batch END = new Batch(new byte[0]);
+
+        static {
+            END.done.complete(null);
+        }
+
+        private final byte[] separator;
+
+        byte[] in = new byte[8192];
+        int inSize;
+        int[] offsets = new int[256];
+        int[] lengths = new int[256];
+        int lines;
+
+        byte[] out = new byte[8192];
+        int outSize;
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Batch(byte[] separator) {
+            this.separator = separator;
+        }
+
+        void reset() {
+            inSize = 0;
+            lines = 0;
+            outSize = 0;
+            done = new CompletableFuture<>();
+        }
+
+        void add(LineSlice line) {
+            if (lines == offsets.length) {
+                offsets = Arrays.copyOf(offsets, lines * 2);
+                lengths = Arrays.copyOf(lengths, lines * 2);
+            }
+            if (inSize + line.length() > in.length) {
+                in = Arrays.copyOf(in, Math.max(in.length * 2, inSize + line.length()));
+            }
+            System.arraycopy(line.array(), line.offset(), in, inSize, line.length());
+            offsets[lines] = inSize;
+            lengths[lines] = line.length();
+            inSize += line.length();
+            lines++;
+        }
+
+        void transform(LineTransform transform) {
+            try {
+                LineSlice slice = new LineSlice();
+                for (int i = 0; i < lines; i++) {
+                    slice.set(in, offsets[i], lengths[i]);
+                    transform.apply(slice, this);
+                }
+                done.complete(null);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        }
+
+        @Override
+        public void writeLine(LineSlice line) {
+            writeLine(line.array(), line.offset(), line.length());
+        }
+
+        @Override
+        public void writeLine(byte[] b, int offset, int length) {
+            Preconditions.checkPositionIndexes(offset, offset + length, b.length);
+            int required = outSize + length + separator.length;
+            if (required > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, required));
+            }
+            System.arraycopy(b, offset, out, outSize, length);
+            outSize += length;
+            System.arraycopy(separator, 0, out, outSize, separator.length);
+            outSize += separator.length;
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int batchLines = 4096;
+        private int queueCapacity = 16;
+
+        private Builder() {
+        }
+
+        /**
+         * The number of threads which apply the transform. {@code 0} applies
+         * the transform on the reader thread.
+         */
+        public Builder setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * The maximum number of lines handed off between stages at a time.
+         */
+        public Builder setBatchLines(int batchLines) {
+            this.batchLines = batchLines;
+            return this;
+        }
+
+        /**
+         * The maximum number of batches waiting for a worker.
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public LinePipeline build() {
+            Preconditions.checkArgument(workers >= 0, "workers must be >= 0");
+            Preconditions.checkArgument(batchLines > 0, "batchLines must be > 0");
+            Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be > 0");
+            return new LinePipeline(workers, batchLines, queueCapacity);
+        }
+    }
+}
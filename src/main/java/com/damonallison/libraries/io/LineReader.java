@@ -0,0 +1,137 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a channel as {@link LineSlice}s, without decoding them.
+ * <p>
+ * Bytes are read into a single reusable buffer and line terminators
+ * ({@code "\n"}, {@code "\r"}, {@code "\r\n"}) are found with
+ * {@link ByteScanner#firstLineTerminator}. Each line is returned as a slice of
+ * the buffer. The buffer only grows if a single line is longer than it.
+ * <p>
+ * The input must be encoded with an ASCII transparent charset (see
+ * {@link ByteScanner#isAsciiTransparent}), so that {@code '\r'} / {@code '\n'}
+ * bytes are always line terminators.
+ * <p>
+ * A reader is stateful and not thread safe. It does not close the channel.
+ */
+final class LineReader {
+
+    private final ReadableByteChannel source;
+    private final LineSlice slice = new LineSlice();
+
+    private byte[] buf;
+    private ByteBuffer readBuf;
+
+    /**
+     * Unprocessed bytes are in {@code [start, end)}.
+     */
+    private int start;
+    private int end;
+
+    /**
+     * The number of bytes read from the channel before {@code buf[0]}.
+     */
+    private long bufferOffset;
+
+    /**
+     * The offset of the line last returned by {@link #next()}.
+     */
+    private long lineStart;
+
+    /**
+     * {@code [start, scanned)} is known not to contain a line terminator.
+     */
+    private int scanned;
+
+    /**
+     * The last line ended with '\r'. If the next byte is '\n', it belongs to
+     * the same terminator.
+     */
+    private boolean skipLF;
+    private boolean eof;
+
+    LineReader(ReadableByteChannel source, int bufferSize) {
+        Preconditions.checkNotNull(source);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be > 0");
+        this.source = source;
+        this.buf = new byte[bufferSize];
+        this.readBuf = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Returns the next line, or {@code null} at end of stream.
+     * <p>
+     * The returned slice is only valid until the next call to {@code next}.
+     */
+    LineSlice next() throws IOException {
+        while (true) {
+            if (skipLF && start < end) {
+                skipLF = false;
+                if (buf[start] == '\n') {
+                    start++;
+                }
+            }
+            if (!skipLF) {
+                int t = ByteScanner.firstLineTerminator(buf, Math.max(start, scanned), end);
+                if (t < end) {
+                    lineStart = bufferOffset + start;
+                    slice.set(buf, start, t - start);
+                    skipLF = buf[t] == '\r';
+                    start = t + 1;
+                    scanned = start;
+                    return slice;
+                }
+                scanned = end;
+            }
+            if (eof) {
+                if (start < end) {
+                    lineStart = bufferOffset + start;
+                    slice.set(buf, start, end - start);
+                    start = end;
+                    return slice;
+                }
+                return null;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Returns the offset of the first byte of the line last returned by
+     * {@link #next()}, relative to the channel's position when the reader was
+     * created.
+     */
+    long position() {
+        return lineStart;
+    }
+
+    /**
+     * Makes room in the buffer (compacting or growing it) and reads more bytes.
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            bufferOffset += start;
+            end -= start;
+            scanned -= start;
+            start = 0;
+        } else if (end == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+            readBuf = ByteBuffer.wrap(buf);
+        }
+        readBuf.limit(buf.length).position(end);
+        int n = source.read(readBuf);
+        if (n == -1) {
+            eof = true;
+        } else {
+            end += n;
+        }
+    }
+}
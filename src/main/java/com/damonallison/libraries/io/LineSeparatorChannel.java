@@ -0,0 +1,135 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link WritableByteChannel} which rewrites line terminators as it writes
+ * to an underlying channel.
+ * <p>
+ * Each {@code "\n"}, {@code "\r"}, or {@code "\r\n"} is replaced with
+ * {@code separator}, and a separator is appended to the last line if it was
+ * not terminated. This is the output {@link java.io.BufferedReader#readLine}
+ * followed by {@link java.io.PrintWriter#println} produces, without
+ * materializing each line as a {@code String}.
+ * <p>
+ * The bytes written must be encoded with an ASCII transparent charset (see
+ * {@link ByteScanner#isAsciiTransparent(Charset)}), which guarantees that
+ * {@code '\r'} and {@code '\n'} bytes are always line terminators.
+ * <p>
+ * Closing this channel writes any pending output but does not close the
+ * underlying channel.
+ */
+final class LineSeparatorChannel implements WritableByteChannel {
+
+    private final WritableByteChannel target;
+    private final byte[] separator;
+    private final ByteBuffer buf;
+
+    private boolean open = true;
+    private boolean empty = true;
+    private boolean afterTerminator = false;
+    private boolean afterCR = false;
+
+    LineSeparatorChannel(WritableByteChannel target, byte[] separator, int bufferSize) {
+        Preconditions.checkNotNull(target);
+        Preconditions.checkNotNull(separator);
+        Preconditions.checkArgument(bufferSize >= separator.length);
+        this.target = target;
+        this.separator = separator.clone();
+        this.buf = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        Preconditions.checkState(open, "channel is closed");
+        final int count = src.remaining();
+        if (count == 0) {
+            return 0;
+        }
+        empty = false;
+
+        // Work against the backing array when there is one. Otherwise, copy
+        // into a temporary array.
+        final byte[] a;
+        int pos;
+        final int limit;
+        if (src.hasArray()) {
+            a = src.array();
+            pos = src.arrayOffset() + src.position();
+            limit = src.arrayOffset() + src.limit();
+        } else {
+            a = new byte[count];
+            src.duplicate().get(a);
+            pos = 0;
+            limit = count;
+        }
+
+        while (pos < limit) {
+            if (afterCR && a[pos] == '\n') {
+                // The separator was already written for the '\r'.
+                afterCR = false;
+                pos++;
+                continue;
+            }
+            int end = ByteScanner.firstLineTerminator(a, pos, limit);
+            if (end > pos) {
+                put(a, pos, end);
+                afterTerminator = false;
+                afterCR = false;
+            }
+            if (end == limit) {
+                break;
+            }
+            put(separator, 0, separator.length);
+            afterTerminator = true;
+            afterCR = a[end] == '\r';
+            pos = end + 1;
+        }
+        src.position(src.limit());
+        return count;
+    }
+
+    private void put(byte[] a, int from, int to) throws IOException {
+        while (from < to) {
+            if (!buf.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buf.remaining(), to - from);
+            buf.put(a, from, n);
+            from += n;
+        }
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            target.write(buf);
+        }
+        buf.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Terminates the last line, if needed, and writes all buffered output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (!empty && !afterTerminator) {
+            put(separator, 0, separator.length);
+        }
+        flush();
+    }
+}
@@ -0,0 +1,124 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.charset.Charset;
+
+/**
+ * A view of a single line within a byte buffer, without its line terminator.
+ * <p>
+ * A slice is a flyweight: the line engine reuses the same slice (and the same
+ * underlying buffer) for every line, so no object or {@code String} is
+ * created per line. A slice is only valid for the duration of the callback it
+ * is passed to. Callers which need to keep a line must copy its bytes.
+ * <p>
+ * Lines are raw bytes in the file's charset. Methods which compare bytes
+ * (i.e., {@link #startsWith(byte[])}) are only meaningful for ASCII text or
+ * for needles encoded in the same charset.
+ */
+public final class LineSlice {
+
+    private byte[] array;
+    private int offset;
+    private int length;
+
+    LineSlice() {
+    }
+
+    LineSlice(byte[] array, int offset, int length) {
+        set(array, offset, length);
+    }
+
+    void set(byte[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the buffer holding the line. The line starts at
+     * {@link #offset()}. Callers must not modify the buffer outside of
+     * {@code [offset(), offset() + length())}.
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @return the byte at {@code index}, relative to the start of the line.
+     */
+    public byte byteAt(int index) {
+        Preconditions.checkElementIndex(index, length);
+        return array[offset + index];
+    }
+
+    /**
+     * @return the index of the first occurrence of {@code b} in the line, or
+     * {@code -1}.
+     */
+    public int indexOf(byte b) {
+        for (int i = 0; i < length; i++) {
+            if (array[offset + i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean startsWith(byte[] prefix) {
+        return regionMatches(0, prefix);
+    }
+
+    public boolean endsWith(byte[] suffix) {
+        return regionMatches(length - suffix.length, suffix);
+    }
+
+    /**
+     * @return {@code true} if {@code needle} appears anywhere in the line.
+     */
+    public boolean contains(byte[] needle) {
+        for (int i = 0; i + needle.length <= length; i++) {
+            if (regionMatches(i, needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(int from, byte[] other) {
+        if (from < 0 || from + other.length > length) {
+            return false;
+        }
+        for (int i = 0; i < other.length; i++) {
+            if (array[offset + from + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the line into a {@code String}. This allocates, so avoid it on
+     * hot paths.
+     */
+    public String toString(Charset charset) {
+        return new String(array, offset, length, charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.defaultCharset());
+    }
+}
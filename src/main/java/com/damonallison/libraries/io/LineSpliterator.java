@@ -0,0 +1,185 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits the lines of a file by byte range, so a parallel stream of lines
+ * divides its work evenly.
+ * <p>
+ * {@link java.io.BufferedReader#lines()} can only split by handing out
+ * batches of lines it has already read, one thread at a time, so parallel
+ * pipelines over large files barely scale. Here, each spliterator owns a
+ * byte range of the file. {@link #trySplit()} cuts the range in half and
+ * moves the cut forward to just past the next line terminator, so every line
+ * belongs to exactly one range. Ranges are read independently with
+ * positional reads on a shared {@link FileChannel}, which are safe to issue
+ * from many threads.
+ * <p>
+ * The charset must be ASCII transparent (see
+ * {@link ByteScanner#isAsciiTransparent}) so that {@code '\r'} and
+ * {@code '\n'} bytes are always line terminators. Lines are split as by
+ * {@link java.io.BufferedReader#readLine()}. Malformed input is replaced.
+ */
+final class LineSpliterator implements Spliterator<String> {
+
+    /**
+     * Ranges smaller than this aren't split.
+     */
+    static final long MIN_SPLIT_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long minSplitSize;
+    private long start;
+    private final long end;
+
+    /**
+     * Created when traversal starts. A range is no longer split after that.
+     */
+    private LineReader reader;
+
+    LineSpliterator(FileChannel channel, Charset charset) throws IOException {
+        this(channel, charset, MIN_SPLIT_SIZE, 0, channel.size());
+    }
+
+    LineSpliterator(FileChannel channel, Charset charset, long minSplitSize, long start, long end) {
+        Preconditions.checkArgument(ByteScanner.isAsciiTransparent(charset),
+                "%s is not ASCII transparent", charset);
+        Preconditions.checkArgument(minSplitSize > 0, "minSplitSize must be > 0");
+        this.channel = channel;
+        this.charset = charset;
+        this.minSplitSize = minSplitSize;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        try {
+            if (reader == null) {
+                reader = new LineReader(new RangeChannel(start, end),
+                        (int) Math.min(IOUtilities.DEFAULT_BUFFER_SIZE, Math.max(1, end - start)));
+            }
+            LineSlice line = reader.next();
+            if (line == null) {
+                return false;
+            }
+            action.accept(line.toString(charset));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (reader != null || end - start < 2 * minSplitSize) {
+            return null;
+        }
+        try {
+            final long mid = lineStartAfter(start + (end - start) / 2);
+            if (mid >= end) {
+                return null;
+            }
+            LineSpliterator prefix = new LineSpliterator(channel, charset, minSplitSize, start, mid);
+            start = mid;
+            return prefix;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the position just past the first line terminator at or after
+     * {@code position} (a {@code "\r\n"} pair is one terminator), or
+     * {@link #end} if there is none in range.
+     */
+    private long lineStartAfter(long position) throws IOException {
+        final byte[] buf = new byte[8 * 1024];
+        final ByteBuffer bb = ByteBuffer.wrap(buf);
+        while (position < end) {
+            bb.clear().limit((int) Math.min(buf.length, end - position));
+            final int n = channel.read(bb, position);
+            if (n <= 0) {
+                return end;
+            }
+            final int t = ByteScanner.firstLineTerminator(buf, 0, n);
+            if (t < n) {
+                position += t + 1;
+                if (buf[t] == '\r') {
+                    // The '\n' of a "\r\n" may be in the next read.
+                    if (t + 1 < n) {
+                        return buf[t + 1] == '\n' ? position + 1 : position;
+                    }
+                    bb.clear().limit(1);
+                    if (position < end && channel.read(bb, position) == 1 && buf[0] == '\n') {
+                        position++;
+                    }
+                }
+                return position;
+            }
+            position += n;
+        }
+        return end;
+    }
+
+    @Override
+    public long estimateSize() {
+        // In bytes, not lines, but proportional to the work remaining.
+        return end - start;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * Reads {@code [position, end)} of the file with positional reads.
+     */
+    private final class RangeChannel implements ReadableByteChannel {
+        private long position;
+        private final long limit;
+
+        RangeChannel(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= limit) {
+                return -1;
+            }
+            final int oldLimit = dst.limit();
+            dst.limit(dst.position() + (int) Math.min(dst.remaining(), limit - position));
+            try {
+                final int n = channel.read(dst, position);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            } finally {
+                dst.limit(oldLimit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * A function applied to each line of a line copy.
+ * <p>
+ * A transform receives each input line as a {@link LineSlice} and writes zero
+ * or more output lines to a {@link Sink}. Writing the slice unchanged copies
+ * the line, writing nothing drops it.
+ */
+@FunctionalInterface
+public interface LineTransform {
+
+    /**
+     * Copies every line unchanged.
+     */
+    LineTransform IDENTITY = (line, sink) -> sink.writeLine(line);
+
+    void apply(LineSlice line, Sink sink) throws IOException;
+
+    /**
+     * Returns a transform which copies the lines matching {@code predicate}
+     * and drops the rest.
+     */
+    static LineTransform filter(Predicate<LineSlice> predicate) {
+        Preconditions.checkNotNull(predicate);
+        return (line, sink) -> {
+            if (predicate.test(line)) {
+                sink.writeLine(line);
+            }
+        };
+    }
+
+    /**
+     * Receives the output lines of a {@link LineTransform}. The line separator
+     * is appended by the sink.
+     */
+    interface Sink {
+
+        void writeLine(LineSlice line) throws IOException;
+
+        void writeLine(byte[] b, int offset, int length) throws IOException;
+    }
+}
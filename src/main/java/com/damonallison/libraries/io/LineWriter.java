@@ -0,0 +1,67 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes lines, each followed by a line separator, to a channel through a
+ * reusable buffer.
+ * <p>
+ * Callers must call {@link #flush()} when done. A writer does not close the
+ * channel.
+ */
+final class LineWriter implements LineTransform.Sink {
+
+    private final WritableByteChannel target;
+    private final byte[] separator;
+    private final ByteBuffer buf;
+
+    LineWriter(WritableByteChannel target, byte[] separator, int bufferSize) {
+        Preconditions.checkNotNull(target);
+        Preconditions.checkNotNull(separator);
+        Preconditions.checkArgument(bufferSize >= separator.length);
+        this.target = target;
+        this.separator = separator.clone();
+        this.buf = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public void writeLine(LineSlice line) throws IOException {
+        writeLine(line.array(), line.offset(), line.length());
+    }
+
+    @Override
+    public void writeLine(byte[] b, int offset, int length) throws IOException {
+        Preconditions.checkPositionIndexes(offset, offset + length, b.length);
+        write(b, offset, length);
+        write(separator, 0, separator.length);
+    }
+
+    private void write(byte[] b, int offset, int length) throws IOException {
+        if (length > buf.remaining()) {
+            flush();
+            if (length > buf.capacity()) {
+                ByteBuffer wrapped = ByteBuffer.wrap(b, offset, length);
+                while (wrapped.hasRemaining()) {
+                    target.write(wrapped);
+                }
+                return;
+            }
+        }
+        buf.put(b, offset, length);
+    }
+
+    /**
+     * Writes all buffered lines to the channel.
+     */
+    void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            target.write(buf);
+        }
+        buf.clear();
+    }
+}
@@ -0,0 +1,125 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped view of an entire file.
+ * <p>
+ * A single {@link MappedByteBuffer} is indexed with an {@code int}, so it can
+ * map at most 2 GB. To view larger files, the file is mapped as a sequence of
+ * fixed size windows. Window {@code i} covers the bytes
+ * {@code [i * windowSize, min((i + 1) * windowSize, size))}.
+ * <p>
+ * Mapping a file does not read it. Pages are faulted in by the OS as they are
+ * touched and live in the page cache, not on the Java heap, so very large
+ * files can be scanned without copying them into {@code byte[]}s.
+ * <p>
+ * There is no way to explicitly unmap a {@link MappedByteBuffer}. The mapping
+ * is released when the buffer is garbage collected. The underlying channel is
+ * closed as soon as the windows are mapped; the mappings remain valid after
+ * the channel is closed.
+ */
+public final class MappedFileView {
+
+    private final long size;
+    private final long windowSize;
+    private final MappedByteBuffer[] windows;
+
+    private MappedFileView(long size, long windowSize, MappedByteBuffer[] windows) {
+        this.size = size;
+        this.windowSize = windowSize;
+        this.windows = windows;
+    }
+
+    /**
+     * Maps {@code path} read-only in windows of {@code windowSize} bytes.
+     *
+     * @param path       the file to map
+     * @param windowSize the maximum size of each mapped window. Must be
+     *                   between 1 and {@link Integer#MAX_VALUE}.
+     */
+    public static MappedFileView open(Path path, long windowSize) throws IOException {
+        Preconditions.checkNotNull(path);
+        Preconditions.checkArgument(windowSize > 0 && windowSize <= Integer.MAX_VALUE,
+                "windowSize must be between 1 and Integer.MAX_VALUE");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int count = (int) ((size + windowSize - 1) / windowSize);
+            MappedByteBuffer[] windows = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(windowSize, size - position));
+            }
+            return new MappedFileView(size, windowSize, windows);
+        }
+    }
+
+    /**
+     * @return the size of the file, in bytes, at the time it was mapped.
+     */
+    public long size() {
+        return size;
+    }
+
+    public long windowSize() {
+        return windowSize;
+    }
+
+    public int windowCount() {
+        return windows.length;
+    }
+
+    /**
+     * Returns window {@code index}.
+     * <p>
+     * Each call returns a new read-only buffer sharing the mapped content, so
+     * callers (and threads) can position / limit their buffer independently.
+     */
+    public ByteBuffer window(int index) {
+        Preconditions.checkElementIndex(index, windows.length);
+        return windows[index].asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the byte at absolute file offset {@code position}.
+     */
+    public byte get(long position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(
+                    String.format("position %d is outside of [0, %d)", position, size));
+        }
+        return windows[(int) (position / windowSize)].get((int) (position % windowSize));
+    }
+
+    /**
+     * Copies {@code length} bytes starting at absolute file offset
+     * {@code position} into {@code dst}, crossing window boundaries as needed.
+     */
+    public void get(long position, byte[] dst, int offset, int length) {
+        Preconditions.checkNotNull(dst);
+        Preconditions.checkPositionIndexes(offset, offset + length, dst.length);
+        if (position < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException(
+                    String.format("[%d, %d) is outside of [0, %d)", position, position + length, size));
+        }
+        while (length > 0) {
+            ByteBuffer window = windows[(int) (position / windowSize)].duplicate();
+            int windowOffset = (int) (position % windowSize);
+            int n = Math.min(length, window.limit() - windowOffset);
+            window.position(windowOffset);
+            window.get(dst, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Tokenizes a memory-mapped file without decoding it.
+ * <p>
+ * When every delimiter character is ASCII and the file's charset is ASCII
+ * transparent, delimiters can be found by scanning the raw bytes: an ASCII
+ * byte is never part of a multi-byte character. Each token is returned as a
+ * {@link CharSequence} over its bytes, which is only decoded when its
+ * characters are first used. Counting or skipping tokens never decodes them.
+ * <p>
+ * Tokens within a single mapped window are slices of the mapping. The rare
+ * token spanning two windows is copied. Tokens follow the same rules as
+ * {@link Tokenizer}.
+ */
+final class MappedTokenSpliterator extends Spliterators.AbstractSpliterator<CharSequence> {
+
+    private final MappedFileView view;
+    private final boolean[] delimiters;
+    private final boolean greedy;
+    private final Charset charset;
+    private final long size;
+
+    private ByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    /**
+     * @param delimiters {@code delimiters[b & 0xFF]} is {@code true} if byte
+     *                   {@code b} is a delimiter (see
+     *                   {@link Tokenizer#byteDelimiters()})
+     * @param greedy     a run of delimiters is a single delimiter
+     */
+    MappedTokenSpliterator(MappedFileView view, boolean[] delimiters, boolean greedy, Charset charset) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        Preconditions.checkArgument(delimiters.length == 256);
+        Preconditions.checkArgument(ByteScanner.isAsciiTransparent(charset),
+                "%s is not ASCII transparent", charset);
+        this.view = view;
+        this.delimiters = delimiters;
+        this.greedy = greedy;
+        this.charset = charset;
+        this.size = view.size();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super CharSequence> action) {
+        // Skip one delimiter.
+        if (position < size && isDelimiter(position)) {
+            position = greedy ? find(position + 1, false) : position + 1;
+        }
+        if (position >= size) {
+            return false;
+        }
+        final long end = find(position, true);
+        action.accept(token(position, end));
+        position = end;
+        return true;
+    }
+
+    private boolean isDelimiter(long p) {
+        load(p);
+        return delimiters[window.get((int) (p - windowStart)) & 0xFF];
+    }
+
+    /**
+     * @return the first position at or after {@code from} which is (or, if
+     * {@code delimiter} is {@code false}, is not) a delimiter, or the file
+     * size if there is none.
+     */
+    private long find(long from, boolean delimiter) {
+        while (from < size) {
+            load(from);
+            final int limit = window.limit();
+            int i = (int) (from - windowStart);
+            while (i < limit && delimiters[window.get(i) & 0xFF] != delimiter) {
+                i++;
+            }
+            from = windowStart + i;
+            if (i < limit) {
+                return from;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Makes the window containing {@code p} current.
+     */
+    private void load(long p) {
+        if (window == null || p < windowStart || p >= windowStart + window.limit()) {
+            final int index = (int) (p / view.windowSize());
+            window = view.window(index);
+            windowStart = index * view.windowSize();
+        }
+    }
+
+    private CharSequence token(long start, long end) {
+        if (start >= windowStart && end <= windowStart + window.limit()) {
+            ByteBuffer bytes = window.duplicate();
+            bytes.position((int) (start - windowStart)).limit((int) (end - windowStart));
+            return new Token(bytes.slice(), charset);
+        }
+        Preconditions.checkState(end - start <= Integer.MAX_VALUE - 8,
+                "token at %s is too large (%s bytes)", start, end - start);
+        byte[] bytes = new byte[(int) (end - start)];
+        view.get(start, bytes, 0, bytes.length);
+        return new Token(ByteBuffer.wrap(bytes), charset);
+    }
+
+    /**
+     * A token's encoded bytes, decoded on first use.
+     * <p>
+     * Tokens are equal to each other when their characters are, and hash
+     * like the equivalent {@code String}, so {@code distinct()} and
+     * {@code Collectors.toSet()} behave as they do for the {@code String}s
+     * returned by a {@link java.util.Scanner}. A token is never equal to a
+     * {@code String} ({@link String#equals} only accepts {@code String}s, and
+     * equality must be symmetric); compare with
+     * {@link String#contentEquals(CharSequence)} instead.
+     */
+    private static final class Token implements CharSequence {
+
+        private ByteBuffer bytes;
+        private final Charset charset;
+        private String decoded;
+
+        Token(ByteBuffer bytes, Charset charset) {
+            this.bytes = bytes;
+            this.charset = charset;
+        }
+
+        @Override
+        public String toString() {
+            if (decoded == null) {
+                decoded = charset.decode(bytes).toString();
+                // The bytes are no longer needed, don't keep the mapping alive.
+                bytes = null;
+            }
+            return decoded;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            return o instanceof Token && toString().equals(o.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public int length() {
+            return toString().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+    }
+}
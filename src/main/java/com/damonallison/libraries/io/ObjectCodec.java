@@ -0,0 +1,25 @@
+package com.damonallison.libraries.io;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes values of a single type to / from a compact binary
+ * form.
+ * <p>
+ * Unlike Java serialization, a codec writes no class descriptors or field
+ * names, only the field values themselves. The type is identified by a small
+ * numeric tag assigned when the codec is registered with a
+ * {@link CodecRegistry}. Nested values (i.e., the key and value of a
+ * {@link com.damonallison.classes.generics.Pair}) are written with
+ * {@link CodecOutput#writeObject(Object)}, which looks up their codec in turn.
+ * <p>
+ * A codec must read exactly the fields it wrote, in the same order.
+ *
+ * @param <T> the type of value encoded
+ */
+public interface ObjectCodec<T> {
+
+    void encode(T value, CodecOutput out) throws IOException;
+
+    T decode(CodecInput in) throws IOException;
+}
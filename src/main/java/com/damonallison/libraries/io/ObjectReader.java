@@ -0,0 +1,140 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily reads the objects in a file written with an
+ * {@link java.io.ObjectOutputStream} (i.e., by
+ * {@link IOUtilities#objectCopy(java.util.List, java.util.List, Path)}), one
+ * at a time.
+ * <p>
+ * Only the object being returned (and anything it references) is held in
+ * memory, so files much larger than the heap can be processed. For this to
+ * hold, the writer must periodically call {@link java.io.ObjectOutputStream#reset()}:
+ * until a reset, both the writer and the reader keep a reference to every
+ * object in the stream (so later references to an object can be written as
+ * a handle).
+ * <p>
+ * A file which ends in the middle of an object fails with a
+ * {@link StreamCorruptedException} rather than ending quietly.
+ */
+public final class ObjectReader extends AbstractIterator<Object> implements Closeable {
+
+    private final Path path;
+    private final long size;
+    private final CountingInputStream counter;
+    private final ObjectInputStream in;
+
+    private ObjectReader(Path path, long size, CountingInputStream counter,
+                         ObjectInputStream in) {
+        this.path = path;
+        this.size = size;
+        this.counter = counter;
+        this.in = in;
+    }
+
+    /**
+     * Opens {@code path}, which may be block compressed (see
+     * {@link IOUtilities#objectCopy(java.util.List, java.util.List, Path, BlockCompression)}).
+     * Compressed files are decompressed as they are read, with blocks
+     * decompressed ahead of the reader in parallel.
+     */
+    public static ObjectReader open(Path path) throws IOException {
+        Preconditions.checkNotNull(path);
+        final long size;
+        final InputStream input;
+        if (BlockCompressedFile.isBlockCompressed(path)) {
+            final BlockCompressedFile compressed = BlockCompressedFile.open(path);
+            try {
+                size = compressed.size();
+                input = new FilterInputStream(compressed.newInputStream(0)) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            compressed.close();
+                        }
+                    }
+                };
+            } catch (RuntimeException e) {
+                compressed.close();
+                throw e;
+            }
+        } else {
+            size = Files.size(path);
+            input = new BufferedInputStream(Files.newInputStream(path), IOUtilities.DEFAULT_BUFFER_SIZE);
+        }
+        CountingInputStream counter = new CountingInputStream(input);
+        try {
+            return new ObjectReader(path, size, counter, new ObjectInputStream(counter));
+        } catch (IOException | RuntimeException e) {
+            counter.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next object. Failures are thrown as
+     * {@link UncheckedIOException}s.
+     */
+    @Override
+    protected Object computeNext() {
+        final long start = counter.getCount();
+        try {
+            return in.readObject();
+        } catch (EOFException e) {
+            // ObjectInputStream reads exactly the bytes of each object, so
+            // the stream ended cleanly only if no bytes were consumed.
+            if (start == size) {
+                return endOfData();
+            }
+            throw new UncheckedIOException(new StreamCorruptedException(String.format(
+                    "%s was truncated in the object starting at offset %d", path, start)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    /**
+     * @return the remaining objects as a sequential stream. Closing the
+     * stream closes this reader.
+     */
+    public Stream<Object> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                (Iterator<Object>) this, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,299 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a directory tree in parallel, streaming the paths which match a glob.
+ * <p>
+ * {@link Files#walkFileTree} visits one directory at a time on the calling
+ * thread. This walker lists each directory in a fork / join task, and forks a
+ * new task for every subdirectory it finds, so independent subtrees are read
+ * concurrently.
+ * <p>
+ * Matches are handed to the returned {@link Stream} thru a bounded queue as
+ * they are found. The stream is lazy: the first match is available before
+ * the walk completes, and the walkers pause when the consumer falls behind.
+ * Matches arrive in no particular order unless sorting is requested, which
+ * requires the entire walk to complete first.
+ * <p>
+ * Symbolic links are not followed.
+ */
+public final class ParallelFileWalker {
+
+    /**
+     * Marks the end of the walk in the queue. Compared by identity.
+     */
+    private static final Path END = Paths.get("");
+
+    private final String glob;
+    private final int maxDepth;
+    private final boolean sorted;
+    private final int parallelism;
+    private final int queueCapacity;
+
+    private ParallelFileWalker(Builder builder) {
+        this.glob = builder.glob;
+        this.maxDepth = builder.maxDepth;
+        this.sorted = builder.sorted;
+        this.parallelism = builder.parallelism;
+        this.queueCapacity = builder.queueCapacity;
+    }
+
+    /**
+     * Walks the tree rooted at {@code root}, returning every file or directory
+     * (excluding {@code root} itself) whose path relative to {@code root}
+     * matches the glob.
+     * <p>
+     * The returned stream must be closed (i.e., with try-with-resources).
+     * Closing the stream early stops the walk. If a directory can't be read,
+     * the stream throws an {@link UncheckedIOException}.
+     */
+    public Stream<Path> walk(Path root) {
+        Preconditions.checkNotNull(root);
+
+        final PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+        final Walk walk = new Walk(root, matcher);
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        pool.execute(new DirectoryTask(walk, root, 0));
+
+        Stream<Path> stream = StreamSupport.stream(new Spliterators.AbstractSpliterator<Path>(
+                Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Path> action) {
+                Path path = walk.take();
+                if (path == END) {
+                    return false;
+                }
+                action.accept(path);
+                return true;
+            }
+        }, false).onClose(() -> {
+            walk.cancel();
+            pool.shutdownNow();
+        });
+        return sorted ? stream.sorted() : stream;
+    }
+
+    /**
+     * State shared by all tasks of a single walk.
+     */
+    private final class Walk {
+        private final Path root;
+        private final PathMatcher matcher;
+        private final BlockingQueue<Path> matches = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private boolean done;
+
+        Walk(Path root, PathMatcher matcher) {
+            this.root = root;
+            this.matcher = matcher;
+        }
+
+        void match(Path path) {
+            if (!matcher.matches(root.relativize(path))) {
+                return;
+            }
+            try {
+                while (!cancelled) {
+                    if (matches.offer(path, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+
+        void fail(RuntimeException e) {
+            failure.compareAndSet(null, e);
+            cancelled = true;
+        }
+
+        void cancel() {
+            cancelled = true;
+            matches.clear();
+        }
+
+        void finish() {
+            try {
+                while (!matches.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        matches.clear();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Blocks until the next match (or {@link #END}) is available.
+         */
+        Path take() {
+            if (done) {
+                return END;
+            }
+            try {
+                Path path = matches.take();
+                if (path == END) {
+                    done = true;
+                    RuntimeException e = failure.get();
+                    if (e != null) {
+                        throw e;
+                    }
+                }
+                return path;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while walking " + root, e);
+            }
+        }
+    }
+
+    /**
+     * Lists a single directory, forking a task for each subdirectory. The
+     * root's task ends the walk once every subdirectory's task has finished.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Walk walk;
+        private final Path dir;
+        private final int depth;
+
+        DirectoryTask(Walk walk, Path dir, int depth) {
+            this.walk = walk;
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth > 0) {
+                list();
+                return;
+            }
+            try {
+                list();
+            } catch (RuntimeException e) {
+                walk.fail(e);
+            }
+            walk.finish();
+        }
+
+        private void list() {
+            if (walk.cancelled || depth >= maxDepth) {
+                return;
+            }
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (walk.cancelled) {
+                        return;
+                    }
+                    walk.match(entry);
+                    if (depth + 1 < maxDepth && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subdirectories.add(new DirectoryTask(walk, entry, depth + 1));
+                    }
+                }
+            } catch (IOException e) {
+                walk.fail(new UncheckedIOException(e));
+                return;
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String glob = "**";
+        private int maxDepth = Integer.MAX_VALUE;
+        private boolean sorted = false;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * The glob paths (relative to the root) must match. Defaults to
+         * {@code "**"}, which matches everything.
+         *
+         * @see java.nio.file.FileSystem#getPathMatcher(String)
+         */
+        public Builder setGlob(String glob) {
+            this.glob = glob;
+            return this;
+        }
+
+        /**
+         * The maximum number of directory levels below the root to visit.
+         * {@code 1} visits only the root's immediate entries.
+         */
+        public Builder setMaxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Sort the matches. The stream won't produce its first match until
+         * the entire tree has been walked.
+         */
+        public Builder setSorted(boolean sorted) {
+            this.sorted = sorted;
+            return this;
+        }
+
+        /**
+         * The number of directories listed concurrently.
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * The maximum number of matches buffered ahead of the consumer.
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public ParallelFileWalker build() {
+            Preconditions.checkNotNull(glob);
+            Preconditions.checkArgument(maxDepth >= 0, "maxDepth must be >= 0");
+            Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+            Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be > 0");
+            return new ParallelFileWalker(this);
+        }
+    }
+}
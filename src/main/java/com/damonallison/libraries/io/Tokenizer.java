@@ -0,0 +1,324 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into tokens separated by a delimiter pattern, with the same
+ * results as {@link java.util.Scanner#useDelimiter(Pattern)}.
+ * <p>
+ * {@link java.util.Scanner} buffers its input, runs the regex engine twice
+ * per token (once to skip the delimiter, once to find the next one) and
+ * allocates a {@code String} for every token. Most delimiters are far
+ * simpler than a general regex: a single character ({@code ","}), a set of
+ * characters ({@code "[,;]"}), or whitespace ({@code "\\s+"}). Those are
+ * recognized when the tokenizer is created and scanned with a hand-written
+ * loop over a character lookup table. Anything else falls back to a
+ * {@link Matcher}.
+ * <p>
+ * {@link #tokenize(CharSequence, TokenVisitor)} reports each token's
+ * {@code [start, end)} offsets rather than a substring, so tokenizing with a
+ * simple delimiter allocates nothing.
+ * <p>
+ * Like {@code Scanner}, one leading delimiter is skipped, tokens between
+ * adjacent delimiters are empty ({@code "a,,b"} has 3 tokens with a
+ * {@code ","} delimiter) and a trailing delimiter does not produce an empty
+ * token.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public final class Tokenizer {
+
+    /**
+     * The characters {@code \s} matches (without
+     * {@link Pattern#UNICODE_CHARACTER_CLASS}).
+     */
+    private static final String WHITESPACE = " \t\n\u000B\f\r";
+
+    private static final String METACHARACTERS = "\\.[]{}()*+?^$|";
+
+    /**
+     * Receives the position of each token.
+     */
+    @FunctionalInterface
+    public interface TokenVisitor {
+        /**
+         * Called with each token, in order. The token is
+         * {@code input.subSequence(start, end)}.
+         */
+        void token(CharSequence input, int start, int end);
+    }
+
+    private final Pattern delimiter;
+
+    /**
+     * For simple delimiters, {@code ascii[c]} is {@code true} if ASCII
+     * character {@code c} is a delimiter. {@code null} if the delimiter
+     * requires a regex.
+     */
+    private final boolean[] ascii;
+
+    /**
+     * Non-ASCII delimiter characters.
+     */
+    private final String other;
+
+    /**
+     * The delimiter is a single character (and not a run of them).
+     */
+    private final int single;
+
+    /**
+     * A run of delimiter characters is a single delimiter (i.e., {@code "\\s+"}).
+     */
+    private final boolean greedy;
+
+    private Tokenizer(Pattern delimiter, String chars, boolean greedy) {
+        this.delimiter = delimiter;
+        this.greedy = greedy;
+        if (chars == null) {
+            this.ascii = null;
+            this.other = null;
+            this.single = -1;
+            return;
+        }
+        this.ascii = new boolean[128];
+        StringBuilder other = new StringBuilder();
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            if (c < 128) {
+                ascii[c] = true;
+            } else {
+                other.append(c);
+            }
+        }
+        this.other = other.toString();
+        this.single = chars.length() == 1 && !greedy ? chars.charAt(0) : -1;
+    }
+
+    /**
+     * Creates a tokenizer for {@code delimiter}, choosing a hand-written
+     * scanner if the delimiter is a single character, a character class of
+     * literal characters or {@code \s}, optionally followed by {@code +}.
+     */
+    public static Tokenizer of(Pattern delimiter) {
+        Preconditions.checkNotNull(delimiter);
+        final String p = delimiter.pattern();
+        if (delimiter.flags() != 0 || p.isEmpty()) {
+            return new Tokenizer(delimiter, null, false);
+        }
+        StringBuilder chars = new StringBuilder();
+        int i = p.charAt(0) == '[' ? parseClass(p, chars) : parseAtom(p, 0, chars);
+        boolean greedy = false;
+        if (i > 0 && i < p.length() && p.charAt(i) == '+') {
+            greedy = true;
+            i++;
+        }
+        if (i != p.length()) {
+            return new Tokenizer(delimiter, null, false);
+        }
+        return new Tokenizer(delimiter, chars.toString(), greedy);
+    }
+
+    /**
+     * Parses a single (possibly escaped) literal character or {@code \s} at
+     * {@code i}, appending the characters it matches to {@code chars}.
+     *
+     * @return the index following the atom, or {@code -1} if it isn't simple
+     */
+    private static int parseAtom(String p, int i, StringBuilder chars) {
+        final char c = p.charAt(i);
+        if (c == '\\') {
+            if (i + 1 == p.length()) {
+                return -1;
+            }
+            final char e = p.charAt(i + 1);
+            switch (e) {
+                case 's':
+                    chars.append(WHITESPACE);
+                    break;
+                case 't':
+                    chars.append('\t');
+                    break;
+                case 'n':
+                    chars.append('\n');
+                    break;
+                case 'r':
+                    chars.append('\r');
+                    break;
+                case 'f':
+                    chars.append('\f');
+                    break;
+                default:
+                    // Escaped punctuation is literal; escaped letters and
+                    // digits have special meanings.
+                    if (Character.isLetterOrDigit(e) || Character.isSurrogate(e)) {
+                        return -1;
+                    }
+                    chars.append(e);
+            }
+            return i + 2;
+        }
+        if (METACHARACTERS.indexOf(c) >= 0 || Character.isSurrogate(c)) {
+            return -1;
+        }
+        chars.append(c);
+        return i + 1;
+    }
+
+    /**
+     * Parses a character class of literal characters (i.e.,
+     * {@code [,;\t]}). Negation, ranges, nested classes and intersections
+     * aren't simple.
+     *
+     * @return the index following the class, or {@code -1} if it isn't simple
+     */
+    private static int parseClass(String p, StringBuilder chars) {
+        int i = 1;
+        while (i < p.length() && p.charAt(i) != ']') {
+            final char c = p.charAt(i);
+            if (c == '^' || c == '-' || c == '&' || c == '[') {
+                return -1;
+            }
+            if (c == '\\') {
+                i = parseAtom(p, i, chars);
+                if (i < 0) {
+                    return -1;
+                }
+            } else {
+                if (Character.isSurrogate(c)) {
+                    return -1;
+                }
+                chars.append(c);
+                i++;
+            }
+        }
+        if (i == p.length() || chars.length() == 0) {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    public Pattern delimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @return {@code true} if the delimiter is scanned without a regex.
+     */
+    boolean isSimple() {
+        return ascii != null;
+    }
+
+    boolean isGreedy() {
+        return greedy;
+    }
+
+    /**
+     * For charsets where ASCII bytes always encode ASCII characters (see
+     * {@link ByteScanner#isAsciiTransparent}), a delimiter made only of ASCII
+     * characters can be found in the encoded bytes without decoding them.
+     *
+     * @return {@code table[b & 0xFF]} is {@code true} if byte {@code b} is a
+     * delimiter, or {@code null} if the delimiter isn't simple or includes a
+     * non-ASCII character.
+     */
+    boolean[] byteDelimiters() {
+        if (ascii == null || !other.isEmpty()) {
+            return null;
+        }
+        boolean[] table = new boolean[256];
+        System.arraycopy(ascii, 0, table, 0, ascii.length);
+        return table;
+    }
+
+    /**
+     * Calls {@code visitor} with the offsets of each token in {@code input}.
+     */
+    public void tokenize(CharSequence input, TokenVisitor visitor) {
+        Preconditions.checkNotNull(input);
+        Preconditions.checkNotNull(visitor);
+        if (ascii == null) {
+            tokenizeRegex(input, visitor);
+            return;
+        }
+        final int length = input.length();
+        final String string = single >= 0 && input instanceof String ? (String) input : null;
+        int pos = 0;
+        while (true) {
+            // Skip one delimiter.
+            if (pos < length && isDelimiter(input.charAt(pos))) {
+                pos++;
+                if (greedy) {
+                    while (pos < length && isDelimiter(input.charAt(pos))) {
+                        pos++;
+                    }
+                }
+            }
+            if (pos == length) {
+                return;
+            }
+            int end;
+            if (string != null) {
+                end = string.indexOf(single, pos);
+                if (end < 0) {
+                    end = length;
+                }
+            } else {
+                end = pos;
+                while (end < length && !isDelimiter(input.charAt(end))) {
+                    end++;
+                }
+            }
+            visitor.token(input, pos, end);
+            pos = end;
+        }
+    }
+
+    private boolean isDelimiter(char c) {
+        return c < 128 ? ascii[c] : other.indexOf(c) >= 0;
+    }
+
+    /**
+     * Mirrors {@code Scanner}: skip a delimiter at the current position, then
+     * find the start of the next one. A zero length delimiter at the current
+     * position is the one just skipped, so the search continues past it.
+     */
+    private void tokenizeRegex(CharSequence input, TokenVisitor visitor) {
+        final int length = input.length();
+        final Matcher m = delimiter.matcher(input);
+        m.useTransparentBounds(true);
+        m.useAnchoringBounds(false);
+        int pos = 0;
+        while (true) {
+            m.region(pos, length);
+            if (m.lookingAt()) {
+                pos = m.end();
+            }
+            if (pos == length) {
+                return;
+            }
+            m.region(pos, length);
+            boolean found = m.find();
+            if (found && m.end() == pos) {
+                found = m.find();
+            }
+            final int end = found ? m.start() : length;
+            visitor.token(input, pos, end);
+            pos = end;
+        }
+    }
+
+    /**
+     * @return the tokens in {@code input}.
+     */
+    public List<String> split(CharSequence input) {
+        final List<String> tokens = new ArrayList<>();
+        tokenize(input, (s, start, end) -> tokens.add(s.subSequence(start, end).toString()));
+        return tokens;
+    }
+}
@@ -0,0 +1,256 @@
+package com.damonallison.libraries.io;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts text from one {@link Charset} to another in bulk.
+ * <p>
+ * Bytes are read a buffer at a time, decoded into a {@link CharBuffer} by a
+ * {@link CharsetDecoder}, and encoded back into bytes by a
+ * {@link CharsetEncoder}. The same three buffers are reused for the entire
+ * copy, so nothing is allocated per character.
+ * <p>
+ * The buffers are heap buffers on purpose: the JDK's decoders / encoders have
+ * fast loops which operate directly on the backing arrays, and fall back to a
+ * much slower per-char path for direct buffers.
+ * <p>
+ * When both charsets are ASCII transparent (see
+ * {@link ByteScanner#isAsciiTransparent}), runs of ASCII bytes are detected
+ * a word at a time and copied to the output as raw bytes. When both charsets
+ * are UTF-8, runs of well formed UTF-8 are copied raw as well. Only the bytes
+ * in between are sent through the decoder / encoder.
+ * <p>
+ * A transcoder is stateful and not thread safe.
+ */
+final class Transcoder {
+
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+
+    /**
+     * ASCII runs can be copied raw.
+     */
+    private final boolean asciiFastPath;
+
+    /**
+     * Well formed UTF-8 runs can be copied raw.
+     */
+    private final boolean utf8FastPath;
+
+    private final ByteBuffer in;
+    private final CharBuffer chars;
+    private final ByteBuffer out;
+
+    private long written;
+
+    /**
+     * @param source     the charset to decode bytes from
+     * @param target     the charset to encode chars to
+     * @param onBadInput the action taken for malformed input and for
+     *                   characters which can't be mapped to {@code target}
+     * @param bufferSize the size of each buffer
+     */
+    Transcoder(Charset source, Charset target, CodingErrorAction onBadInput, int bufferSize) {
+        Preconditions.checkNotNull(source);
+        Preconditions.checkNotNull(target);
+        Preconditions.checkNotNull(onBadInput);
+        Preconditions.checkArgument(bufferSize >= 16, "bufferSize must be >= 16");
+
+        this.decoder = source.newDecoder()
+                .onMalformedInput(onBadInput)
+                .onUnmappableCharacter(onBadInput);
+        this.encoder = target.newEncoder()
+                .onMalformedInput(onBadInput)
+                .onUnmappableCharacter(onBadInput);
+        this.asciiFastPath = ByteScanner.isAsciiTransparent(source)
+                && ByteScanner.isAsciiTransparent(target);
+        this.utf8FastPath = source.equals(StandardCharsets.UTF_8)
+                && target.equals(StandardCharsets.UTF_8);
+
+        this.in = ByteBuffer.allocate(bufferSize);
+        this.chars = CharBuffer.allocate(bufferSize);
+        this.out = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Reads {@code source} until end of stream, writing the transcoded bytes
+     * to {@code target}.
+     *
+     * @return the number of bytes written to {@code target}
+     * @throws CharacterCodingException if bad input is found and the error
+     *                                  action is {@link CodingErrorAction#REPORT}
+     */
+    long transcode(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        decoder.reset();
+        encoder.reset();
+        in.clear();
+        chars.clear();
+        out.clear();
+        written = 0;
+
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            endOfInput = source.read(in) == -1;
+            in.flip();
+            if (asciiFastPath) {
+                copyRuns(endOfInput, target);
+            } else {
+                decode(in, endOfInput, target);
+            }
+            in.compact();
+        }
+        finish(target);
+        return written;
+    }
+
+    /**
+     * Copies the input buffer to the output buffer, copying raw runs directly
+     * and decoding only the bytes which require conversion.
+     * <p>
+     * On return, any remaining bytes in the input buffer are an incomplete
+     * sequence which requires more input.
+     */
+    private void copyRuns(boolean endOfInput, WritableByteChannel target) throws IOException {
+        final byte[] a = in.array();
+        final int limit = in.limit();
+        int pos = in.position();
+
+        while (pos < limit) {
+            int raw = utf8FastPath
+                    ? ByteScanner.validUtf8Prefix(a, pos, limit)
+                    : ByteScanner.firstNonAscii(a, pos, limit);
+            put(a, pos, raw, target);
+            pos = raw;
+            if (pos == limit) {
+                break;
+            }
+            if (utf8FastPath && !endOfInput && ByteScanner.isIncompleteUtf8(a, pos, limit)) {
+                break; // wait for the rest of the sequence.
+            }
+
+            // In an ASCII transparent charset, an ASCII byte always starts a
+            // new character, so the bytes up to the next ASCII byte can be
+            // decoded on their own. If the decoder is left holding an
+            // incomplete sequence, extend the segment until it resolves.
+            int end = ByteScanner.firstAscii(a, pos, limit);
+            in.limit(end).position(pos);
+            decode(in, endOfInput && end == limit, target);
+            while (in.hasRemaining() && in.limit() < limit) {
+                in.limit(in.limit() + 1);
+                decode(in, endOfInput && in.limit() == limit, target);
+            }
+
+            // Anything left over is an incomplete sequence at the end of the
+            // input buffer.
+            pos = in.position();
+            boolean incomplete = in.hasRemaining();
+            in.limit(limit);
+            if (incomplete) {
+                break;
+            }
+        }
+        in.limit(limit).position(pos);
+    }
+
+    /**
+     * Appends {@code a[from, to)} to the output buffer without conversion,
+     * draining the output buffer to {@code target} each time it fills.
+     */
+    private void put(byte[] a, int from, int to, WritableByteChannel target) throws IOException {
+        while (from < to) {
+            if (!out.hasRemaining()) {
+                drain(target);
+            }
+            int n = Math.min(out.remaining(), to - from);
+            out.put(a, from, n);
+            from += n;
+        }
+    }
+
+    /**
+     * Decodes as much of {@code bytes} as possible, encoding the decoded
+     * chars to {@code target} as the char buffer fills.
+     * <p>
+     * On return, any remaining bytes in {@code bytes} are an incomplete
+     * sequence which requires more input.
+     */
+    private void decode(ByteBuffer bytes, boolean endOfInput, WritableByteChannel target) throws IOException {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            check(result);
+            encode(false, target);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Flushes the decoder and encoder, and writes everything buffered to
+     * {@code target}.
+     */
+    private void finish(WritableByteChannel target) throws IOException {
+        // The decoder must see end of input before it can be flushed. It may
+        // not have, if the input ended with a raw run.
+        decode(ByteBuffer.allocate(0), true, target);
+
+        CoderResult result;
+        do {
+            result = decoder.flush(chars);
+            check(result);
+            encode(false, target);
+        } while (result.isOverflow());
+
+        encode(true, target);
+        do {
+            result = encoder.flush(out);
+            check(result);
+            drain(target);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Encodes the pending chars into the output buffer, draining the output
+     * buffer to {@code target} each time it fills.
+     */
+    private void encode(boolean endOfInput, WritableByteChannel target) throws IOException {
+        chars.flip();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, out, endOfInput);
+            check(result);
+            if (result.isOverflow()) {
+                drain(target);
+            }
+        } while (result.isOverflow());
+        chars.compact();
+    }
+
+    /**
+     * Writes the output buffer to {@code target}.
+     */
+    private void drain(WritableByteChannel target) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            written += target.write(out);
+        }
+        out.clear();
+    }
+
+    private static void check(CoderResult result) throws CharacterCodingException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.damonallison.libraries.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for variable length integer ("varint") encoding.
+ * <p>
+ * A varint stores 7 bits per byte, least significant group first. The high
+ * bit of each byte is set when more bytes follow. Small values take fewer
+ * bytes: {@code 0 - 127} take one byte, {@code 128 - 16383} take two.
+ * <p>
+ * Negative numbers have their high bit set, so they would always take the
+ * maximum number of bytes. Signed values are first "zigzag" encoded, which
+ * interleaves positive and negative values ({@code 0, -1, 1, -2, 2...} map
+ * to {@code 0, 1, 2, 3, 4...}) so values with a small magnitude stay small.
+ */
+final class Varints {
+
+    /**
+     * The maximum number of bytes used to encode an {@code int}.
+     */
+    static final int MAX_INT_BYTES = 5;
+
+    /**
+     * The maximum number of bytes used to encode a {@code long}.
+     */
+    static final int MAX_LONG_BYTES = 10;
+
+    private Varints() {
+    }
+
+    static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    static int unZigZag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint into {@code b} at
+     * {@code offset}, which must have room for {@link #MAX_LONG_BYTES}.
+     *
+     * @return the offset following the last byte written
+     */
+    static int write(long value, byte[] b, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            b[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        b[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint at {@code buf}'s position.
+     */
+    static void put(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint at {@code buf}'s position.
+     *
+     * @throws IllegalArgumentException if the varint is longer than
+     *                                  {@link #MAX_LONG_BYTES}
+     */
+    static long get(ByteBuffer buf) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /**
+     * @return the number of bytes {@code value} takes as an unsigned varint.
+     */
+    static int size(long value) {
+        // Each byte holds 7 bits; 0 still takes a byte.
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+}
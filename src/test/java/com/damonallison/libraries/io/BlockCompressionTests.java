@@ -0,0 +1,148 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link BlockCompressedOutputStream} compresses blocks out of order on a
+ * pool of threads, but must write them in order. These tests use small
+ * blocks so each file spans many blocks.
+ */
+class BlockCompressionTests {
+
+    /**
+     * Compressible, but not trivially so: random words from a small
+     * vocabulary.
+     */
+    private static byte[] text(int length, long seed) {
+        String[] words = {"alpha ", "beta ", "gamma ", "delta\n", "epsilon ", "zeta "};
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        while (out.size() < length) {
+            byte[] word = words[random.nextInt(words.length)].getBytes();
+            out.write(word, 0, word.length);
+        }
+        return Arrays.copyOf(out.toByteArray(), length);
+    }
+
+    private static Path write(byte[] data, int blockSize) throws IOException {
+        Path out = Files.createTempFile("blocks", null);
+        BlockCompression compression = BlockCompression.newBuilder()
+                .setBlockSize(blockSize)
+                .setParallelism(4)
+                .build();
+        try (OutputStream os = new BlockCompressedOutputStream(Files.newOutputStream(out), compression)) {
+            // Mix single byte and bulk writes, some spanning several blocks.
+            Random random = new Random(1);
+            int pos = 0;
+            while (pos < data.length) {
+                if (random.nextInt(10) == 0) {
+                    os.write(data[pos++]);
+                } else {
+                    int n = Math.min(data.length - pos, random.nextInt(3 * blockSize));
+                    os.write(data, pos, n);
+                    pos += n;
+                }
+            }
+        }
+        return out;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        final byte[] data = text(1_000_003, 7);
+        final int blockSize = 16 * 1024;
+        Path out = write(data, blockSize);
+        assertTrue(Files.size(out) * 3 < data.length);
+
+        try (BlockCompressedFile file = BlockCompressedFile.open(out)) {
+            assertEquals(data.length, file.size());
+            assertEquals((data.length + blockSize - 1) / blockSize, file.blockCount());
+            assertArrayEquals(data, file.readFully());
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            try (InputStream in = file.newInputStream(0)) {
+                in.transferTo(streamed);
+            }
+            assertArrayEquals(data, streamed.toByteArray());
+
+            assertArrayEquals(Arrays.copyOfRange(data, 3 * blockSize, 4 * blockSize), file.readBlock(3));
+        }
+    }
+
+    /**
+     * Reading can start at any position; only the blocks from that position
+     * on are decompressed.
+     */
+    @Test
+    void seek() throws IOException {
+        final byte[] data = text(200_000, 11);
+        final int blockSize = 4096;
+        Path out = write(data, blockSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (BlockCompressedFile file = BlockCompressedFile.open(out)) {
+            for (long position : new long[]{0, 1, blockSize - 1, blockSize, 5 * blockSize + 17,
+                    data.length - 1, data.length}) {
+                if (position < data.length) {
+                    assertEquals(position / blockSize, file.blockAt(position));
+                }
+                try (InputStream in = file.newInputStream(position, 3, executor)) {
+                    byte[] rest = in.readAllBytes();
+                    assertArrayEquals(Arrays.copyOfRange(data, (int) position, data.length), rest);
+                }
+            }
+            assertThrows(IllegalArgumentException.class, () -> file.newInputStream(data.length + 1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void emptyAndCorrupt() throws IOException {
+        Path out = write(new byte[0], 1024);
+        try (BlockCompressedFile file = BlockCompressedFile.open(out)) {
+            assertEquals(0, file.blockCount());
+            assertEquals(0, file.size());
+            assertEquals(-1, file.newInputStream(0).read());
+        }
+
+        // Nothing can be written once the stream is closed.
+        OutputStream closed = new BlockCompressedOutputStream(new ByteArrayOutputStream(), BlockCompression.defaults());
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> closed.write(1));
+        assertThrows(IllegalStateException.class, () -> closed.write(new byte[8], 0, 8));
+
+        final Path text = write(text(10_000, 3), 1024);
+        assertTrue(BlockCompressedFile.isBlockCompressed(text));
+        byte[] bytes = Files.readAllBytes(text);
+
+        // Corrupt the first block's compressed data.
+        byte[] corrupt = bytes.clone();
+        for (int i = BlockCompressedOutputStream.HEADER_SIZE + 2; i < BlockCompressedOutputStream.HEADER_SIZE + 20; i++) {
+            corrupt[i] ^= 0x5A;
+        }
+        Files.write(text, corrupt);
+        try (BlockCompressedFile file = BlockCompressedFile.open(text)) {
+            assertThrows(IOException.class, () -> file.readBlock(0));
+            assertThrows(IOException.class, file::readFully);
+        }
+
+        // Truncation loses the footer.
+        Files.write(text, Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(IOException.class, () -> BlockCompressedFile.open(text));
+        assertFalse(BlockCompressedFile.isBlockCompressed(Files.write(text, new byte[2])));
+    }
+}
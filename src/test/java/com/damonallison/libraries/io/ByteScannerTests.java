@@ -0,0 +1,91 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link ByteScanner} tests 8 bytes at a time. Each test places the byte
+ * being searched for at every offset within (and after) a word to verify
+ * both the word loop and the trailing byte loop.
+ */
+class ByteScannerTests {
+
+    @Test
+    void firstNonAscii() {
+        for (int i = 0; i < 20; i++) {
+            byte[] a = new byte[20];
+            Arrays.fill(a, (byte) 'a');
+            a[i] = (byte) 0xC3;
+            assertEquals(i, ByteScanner.firstNonAscii(a, 0, a.length));
+            assertEquals(i, ByteScanner.firstNonAscii(a, 0, i));
+        }
+        assertEquals(20, ByteScanner.firstNonAscii(new byte[20], 0, 20));
+    }
+
+    @Test
+    void firstAscii() {
+        for (int i = 0; i < 20; i++) {
+            byte[] a = new byte[20];
+            Arrays.fill(a, (byte) 0x80);
+            a[i] = 'a';
+            assertEquals(i, ByteScanner.firstAscii(a, 0, a.length));
+        }
+    }
+
+    @Test
+    void firstLineTerminator() {
+        for (int i = 0; i < 20; i++) {
+            byte[] lf = new byte[20];
+            byte[] cr = new byte[20];
+            Arrays.fill(lf, (byte) 'a');
+            Arrays.fill(cr, (byte) 'a');
+            lf[i] = '\n';
+            cr[i] = '\r';
+            // Bytes adjacent to '\n' / '\r' (0x0B, 0x0C) must not match.
+            if (i > 0) {
+                lf[i - 1] = 0x0B;
+                cr[i - 1] = 0x0C;
+            }
+            assertEquals(i, ByteScanner.firstLineTerminator(lf, 0, lf.length));
+            assertEquals(i, ByteScanner.firstLineTerminator(cr, 0, cr.length));
+        }
+        byte[] none = "no terminators here".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(none.length, ByteScanner.firstLineTerminator(none, 0, none.length));
+    }
+
+    @Test
+    void validUtf8Prefix() {
+        byte[] valid = "abc\u00e9\u20ac\uD83D\uDE00xyz".getBytes(StandardCharsets.UTF_8);
+        assertEquals(valid.length, ByteScanner.validUtf8Prefix(valid, 0, valid.length));
+
+        // Truncated 4 byte sequence.
+        int emoji = "abc\u00e9\u20ac".getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(emoji, ByteScanner.validUtf8Prefix(valid, 0, emoji + 2));
+        assertTrue(ByteScanner.isIncompleteUtf8(valid, emoji, emoji + 2));
+
+        // Malformed : stray continuation, overlong, surrogate, > U+10FFFF.
+        byte[][] malformed = {
+                {'a', (byte) 0x80},
+                {'a', (byte) 0xC0, (byte) 0xAF},
+                {'a', (byte) 0xE0, (byte) 0x80, (byte) 0xAF},
+                {'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80},
+                {'a', (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+                {'a', (byte) 0xFF},
+        };
+        for (byte[] a : malformed) {
+            assertEquals(1, ByteScanner.validUtf8Prefix(a, 0, a.length));
+            assertFalse(ByteScanner.isIncompleteUtf8(a, 1, a.length));
+        }
+    }
+
+    @Test
+    void asciiTransparent() {
+        assertTrue(ByteScanner.isAsciiTransparent(StandardCharsets.UTF_8));
+        assertTrue(ByteScanner.isAsciiTransparent(StandardCharsets.ISO_8859_1));
+        assertFalse(ByteScanner.isAsciiTransparent(StandardCharsets.UTF_16));
+    }
+}
@@ -0,0 +1,180 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A delta copy must leave the destination identical to the source, while
+ * writing only the blocks which changed.
+ */
+class DeltaCopyTests {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(25).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void changedBlocks() throws IOException {
+        DeltaCopy delta = DeltaCopy.newBuilder().setBlockSize(BLOCK_SIZE).build();
+        byte[] bytes = randomBytes(100 * BLOCK_SIZE + 17);
+        Path in = Files.createTempFile("delta", null);
+        Path out = Files.createTempFile("delta", null);
+        Files.delete(out);
+        Files.write(in, bytes);
+
+        // A missing destination is written in full.
+        DeltaCopy.Result result = delta.copy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+        assertEquals(bytes.length, result.getBytes());
+        assertEquals(bytes.length, result.getBytesWritten());
+        assertEquals(101, result.getChangedBlocks());
+
+        // Nothing changed, nothing is written.
+        result = delta.copy(in, out);
+        assertEquals(0, result.getBytesWritten());
+
+        // Two bytes in different blocks, and the partial last block.
+        bytes[10] ^= 1;
+        bytes[50 * BLOCK_SIZE + 3] ^= 1;
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(in, bytes);
+        result = delta.copy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+        assertEquals(3, result.getChangedBlocks());
+        assertEquals(2 * BLOCK_SIZE + 17, result.getBytesWritten());
+
+        // Truncating rewrites only the new (shorter) last block.
+        bytes = Arrays.copyOf(bytes, 60 * BLOCK_SIZE + 5);
+        Files.write(in, bytes);
+        result = delta.copy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+        assertEquals(5, result.getBytesWritten());
+
+        // Appending rewrites the old last block and writes the new ones.
+        byte[] appended = randomBytes(2 * BLOCK_SIZE);
+        bytes = Arrays.copyOf(bytes, 62 * BLOCK_SIZE);
+        System.arraycopy(appended, 0, bytes, 60 * BLOCK_SIZE + 5, 2 * BLOCK_SIZE - 5);
+        Files.write(in, bytes);
+        result = delta.copy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+        assertEquals(2 * BLOCK_SIZE, result.getBytesWritten());
+
+        // Inserting shifts every later block, so they're all rewritten.
+        byte[] inserted = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, inserted, 0, 10 * BLOCK_SIZE);
+        System.arraycopy(bytes, 10 * BLOCK_SIZE, inserted, 10 * BLOCK_SIZE + 1, bytes.length - 10 * BLOCK_SIZE);
+        Files.write(in, inserted);
+        result = delta.copy(in, out);
+        assertArrayEquals(inserted, Files.readAllBytes(out));
+        assertEquals(inserted.length - 10 * BLOCK_SIZE, result.getBytesWritten());
+
+        // And an empty source empties the destination.
+        Files.write(in, new byte[0]);
+        result = delta.copy(in, out);
+        assertEquals(0, Files.size(out));
+        assertEquals(0, result.getBytesWritten());
+
+        assertFalse(Files.exists(DeltaCopy.sidecar(out)));
+    }
+
+    @Test
+    void cachedSignatures() throws IOException {
+        DeltaCopy delta = DeltaCopy.newBuilder()
+                .setBlockSize(BLOCK_SIZE)
+                .setCacheSignatures(true)
+                .build();
+        byte[] bytes = randomBytes(20 * BLOCK_SIZE);
+        Path in = Files.createTempFile("delta", null);
+        Path out = Files.createTempFile("delta", null);
+        Files.write(in, bytes);
+
+        assertEquals(bytes.length, delta.copy(in, out).getBytesWritten());
+        Path sidecar = DeltaCopy.sidecar(out);
+        assertTrue(Files.exists(sidecar));
+        DeltaCopy.Signature cached = DeltaCopy.Signature.read(sidecar);
+        DeltaCopy.Signature computed = DeltaCopy.Signature.of(out, BLOCK_SIZE);
+        assertArrayEquals(computed.weak, cached.weak);
+        assertArrayEquals(computed.strong, cached.strong);
+
+        bytes[5 * BLOCK_SIZE] ^= 1;
+        Files.write(in, bytes);
+        assertEquals(BLOCK_SIZE, delta.copy(in, out).getBytesWritten());
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        // Changing the destination behind the cache's back makes it stale, even
+        // immediately after a copy (a "racy" modification time); the
+        // destination's signature is recomputed and the change is undone.
+        for (int i = 0; i < 20; i++) {
+            try (FileChannel channel = FileChannel.open(out, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{(byte) ~bytes[7 * BLOCK_SIZE + i]}),
+                        7 * BLOCK_SIZE + i);
+            }
+            assertEquals(BLOCK_SIZE, delta.copy(in, out).getBytesWritten());
+            assertArrayEquals(bytes, Files.readAllBytes(out));
+        }
+
+        // A signature stamped too soon after the destination was modified
+        // isn't trusted.
+        DeltaCopy.Signature racy = DeltaCopy.Signature.of(out, BLOCK_SIZE);
+        racy.stamp = new FileStamp(racy.size, racy.stamp.modified, racy.stamp.modified);
+        assertTrue(racy.stamp.isRacy());
+        racy.write(sidecar);
+        assertFalse(DeltaCopy.Signature.read(sidecar).stamp.matches(out));
+
+        // A corrupt sidecar is ignored.
+        Files.write(sidecar, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> DeltaCopy.Signature.read(sidecar));
+        assertEquals(0, delta.copy(in, out).getBytesWritten());
+        assertEquals(out.toFile().length(), DeltaCopy.Signature.read(sidecar).size);
+    }
+
+    @Test
+    void deltaCopy() throws IOException {
+        byte[] bytes = randomBytes(3 * DeltaCopy.DEFAULT_BLOCK_SIZE);
+        Path in = Files.createTempFile("delta", null);
+        Path out = Files.createTempFile("delta", null);
+        Files.write(in, bytes);
+        Files.write(out, bytes);
+
+        bytes[DeltaCopy.DEFAULT_BLOCK_SIZE] ^= 1;
+        Files.write(in, bytes);
+        DeltaCopy.Result result = IOUtilities.deltaCopy(in, out);
+        assertEquals(1, result.getChangedBlocks());
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+        assertThrows(IllegalArgumentException.class, () -> DeltaCopy.newBuilder().setBlockSize(0).build());
+    }
+
+    /**
+     * Blocks are indexed by {@code int}. A source with more blocks than that
+     * is rejected before the destination is created, even without cached
+     * signatures.
+     */
+    @Test
+    void tooManyBlocks() throws IOException {
+        Path in = Files.createTempFile("delta", null);
+        Path out = Files.createTempFile("delta", null);
+        Files.delete(out);
+        // Sparse, so it takes no space.
+        try (FileChannel channel = FileChannel.open(in, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[1]), 1L << 31);
+        }
+        DeltaCopy delta = DeltaCopy.newBuilder().setBlockSize(1).build();
+        assertThrows(IOException.class, () -> delta.copy(in, out));
+        assertFalse(Files.exists(out));
+        Files.delete(in);
+    }
+}
@@ -0,0 +1,125 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IOMetrics} records nothing until enabled, then aggregates every
+ * copy into per-method counters and histograms.
+ */
+class IOMetricsTests {
+
+    @AfterEach
+    void disable() {
+        IOMetrics.disable();
+        IOMetrics.reset();
+    }
+
+    private static Path randomFile(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(23).nextBytes(bytes);
+        Path path = Files.createTempFile("metrics", null);
+        Files.write(path, bytes);
+        return path;
+    }
+
+    @Test
+    void disabledByDefault() throws IOException {
+        assertFalse(IOMetrics.isEnabled());
+        assertSame(IOMetrics.Operation.NOOP, IOMetrics.start("channelCopy", 1024));
+
+        Path in = randomFile(10_000);
+        IOUtilities.channelCopy(in, Files.createTempFile("out", null));
+        assertTrue(IOMetrics.snapshot().isEmpty());
+        assertEquals(0, IOMetrics.snapshot("channelCopy").getOperations());
+    }
+
+    @Test
+    void copies() throws Exception {
+        final int size = 100_000;
+        Path in = randomFile(size);
+        Path out = Files.createTempFile("out", null);
+        IOMetrics.enable();
+
+        IOUtilities.channelCopy(in, out, 1000);
+        IOUtilities.channelCopy(in, out, 1000);
+        IOMetrics.Snapshot channel = IOMetrics.snapshot("channelCopy");
+        assertEquals(2, channel.getOperations());
+        assertEquals(2L * size, channel.getBytesRead());
+        assertEquals(2L * size, channel.getBytesWritten());
+        // 100 full buffers and the read which returns end of stream, per copy.
+        assertEquals(2 * 101, channel.getReadCalls());
+        assertEquals(2 * 100, channel.getWriteCalls());
+        assertEquals(1000, channel.getBufferSize());
+        assertTrue(channel.getWallNanos() >= channel.getBlockedNanos());
+        assertEquals(2, channel.getOperationLatency().getCount());
+        assertEquals(channel.getReadCalls() + channel.getWriteCalls(), channel.getCallLatency().getCount());
+        assertTrue(channel.getThroughput() > 0);
+
+        IOUtilities.parallelCopy(in, out, 4, 10_000);
+        IOUtilities.copyAsync(in, out).get(30, TimeUnit.SECONDS);
+        IOUtilities.mappedCopy(in, out);
+        for (String method : Arrays.asList("parallelCopy", "copyAsync", "mappedCopy")) {
+            IOMetrics.Snapshot snapshot = IOMetrics.snapshot(method);
+            assertEquals(1, snapshot.getOperations(), method);
+            assertEquals(size, snapshot.getBytesWritten(), method);
+        }
+        assertEquals(0, IOMetrics.snapshot("mappedCopy").getReadCalls());
+
+        Path text = Files.createTempFile("text", null);
+        Files.write(text, "one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+        IOUtilities.lineCopy(text, out, LineTransform.IDENTITY);
+        assertEquals(Files.size(text), IOMetrics.snapshot("lineCopy").getBytesRead());
+        IOUtilities.dataCopy(Arrays.asList("a", "b"), new int[]{1, 2}, out);
+        assertEquals(Files.size(out), IOMetrics.snapshot("dataCopy").getBytesWritten());
+
+        Map<String, IOMetrics.Snapshot> all = IOMetrics.snapshot();
+        assertEquals(Arrays.asList("channelCopy", "copyAsync", "dataCopy", "lineCopy", "mappedCopy", "parallelCopy"),
+                Arrays.asList(all.keySet().toArray()));
+
+        // Disabling stops recording, but keeps what has been recorded.
+        IOMetrics.disable();
+        IOUtilities.channelCopy(in, out, 1000);
+        assertEquals(2, IOMetrics.snapshot("channelCopy").getOperations());
+        IOMetrics.reset();
+        assertTrue(IOMetrics.snapshot().isEmpty());
+    }
+
+    @Test
+    void histogram() {
+        assertEquals(0, IOMetrics.Histogram.bucket(0));
+        assertEquals(1, IOMetrics.Histogram.bucket(1));
+        assertEquals(2, IOMetrics.Histogram.bucket(3));
+        assertEquals(11, IOMetrics.Histogram.bucket(1024));
+        assertEquals(1023, IOMetrics.Histogram.upperBound(10));
+        assertEquals(Long.MAX_VALUE, IOMetrics.Histogram.upperBound(63));
+
+        IOMetrics.enable();
+        IOMetrics.Operation op = IOMetrics.start("test", 0);
+        for (int i = 0; i < 99; i++) {
+            op.write(1, System.nanoTime());
+        }
+        op.write(1, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        op.finish();
+        op.finish();
+
+        IOMetrics.Snapshot snapshot = IOMetrics.snapshot("test");
+        assertEquals(1, snapshot.getOperations());
+        IOMetrics.Histogram calls = snapshot.getCallLatency();
+        assertEquals(100, calls.getCount());
+        assertTrue(calls.percentile(50) < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(calls.percentile(100) >= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, IOMetrics.snapshot("missing").getCallLatency().percentile(99));
+    }
+}
@@ -1,17 +1,39 @@
 package com.damonallison.libraries.io;
 
 import com.damonallison.classes.generics.Pair;
+import com.damonallison.classes.generics.SuperPair;
+import com.damonallison.classes.inheritance.Bike;
+import com.damonallison.classes.inheritance.MountainBike;
 import com.google.common.collect.Lists;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -120,6 +142,465 @@ public class IOTests {
         assertArrayEquals(line, Files.readAllBytes(outLines));
     }
 
+    /**
+     * {@link IOUtilities#byteCopy} is channel based. {@code transferTo} may
+     * copy less than requested per call, so verify a file large enough to
+     * require multiple transfers (and an empty file) copy exactly.
+     */
+    @Test
+    void byteCopyLargeFile() throws IOException {
+        final byte[] bytes = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(bytes);
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outbytes", null);
+        Files.write(in, bytes);
+
+        // Pre-populate out with more data than in. byteCopy must truncate.
+        Files.write(out, new byte[bytes.length * 2]);
+        IOUtilities.byteCopy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        Path empty = Files.createTempFile("empty", null);
+        IOUtilities.byteCopy(empty, out);
+        assertEquals(0, Files.size(out));
+    }
+
+    /**
+     * {@link IOUtilities#channelCopy} copies through pooled direct buffers.
+     */
+    @Test
+    void channelCopy() throws IOException {
+        final byte[] bytes = new byte[100 * 1024 + 3];
+        new Random(42).nextBytes(bytes);
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outchannel", null);
+        Files.write(in, bytes);
+
+        // Default buffer size (the file store's block size).
+        IOUtilities.channelCopy(in, out);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        // Caller specified buffer size.
+        IOUtilities.channelCopy(in, out, 1000);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        // A destination which doesn't exist yet is created.
+        Path created = Files.createTempDirectory("outchannel").resolve("new");
+        IOUtilities.channelCopy(in, created);
+        assertArrayEquals(bytes, Files.readAllBytes(created));
+
+        // Buffers are returned to the pool and reused.
+        DirectBufferPool pool = new DirectBufferPool(2048);
+        ByteBuffer buf = pool.acquire(1024);
+        assertTrue(buf.isDirect());
+        buf.put((byte) 1);
+        pool.release(buf);
+        assertEquals(1024, pool.retainedBytes());
+        ByteBuffer reused = pool.acquire(1024);
+        assertSame(buf, reused);
+        assertEquals(0, reused.position());
+        assertEquals(0, pool.retainedBytes());
+
+        // The pool is bounded. Buffers released while full are dropped.
+        pool.release(ByteBuffer.allocateDirect(2048));
+        pool.release(reused);
+        assertEquals(2048, pool.retainedBytes());
+    }
+
+    /**
+     * {@link IOUtilities#parallelCopy} copies chunks concurrently, writing
+     * each one at its offset in the preallocated destination.
+     */
+    @Test
+    void parallelCopy() throws IOException {
+        final byte[] bytes = new byte[5 * 1024 * 1024 + 11];
+        new Random(42).nextBytes(bytes);
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outparallel", null);
+        Files.write(in, bytes);
+
+        // A chunk size which doesn't divide the file evenly, and one which
+        // is larger than the per-worker buffer.
+        for (long chunkSize : new long[]{100_003, 3 * 1024 * 1024}) {
+            IOUtilities.parallelCopy(in, out, 4, chunkSize);
+            assertArrayEquals(bytes, Files.readAllBytes(out));
+        }
+
+        Path empty = Files.createTempFile("empty", null);
+        IOUtilities.parallelCopy(empty, out, 4, 1024);
+        assertEquals(0, Files.size(out));
+    }
+
+    /**
+     * {@link IOUtilities#copyAsync} returns immediately with a future that
+     * completes when the copy is done. Copies compose with other futures.
+     */
+    @Test
+    void copyAsync() throws Exception {
+        final byte[] bytes = new byte[5 * 1024 * 1024 + 11];
+        new Random(42).nextBytes(bytes);
+
+        Path in = Files.createTempFile("infile", null);
+        Path out1 = Files.createTempFile("outasync", null);
+        Path out2 = Files.createTempFile("outasync", null);
+        Files.write(in, bytes);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Long> both = IOUtilities.copyAsync(in, out1, executor)
+                    .thenCombine(IOUtilities.copyAsync(in, out2, 2, executor), Long::sum);
+            assertEquals(2L * bytes.length, both.get(30, TimeUnit.SECONDS).longValue());
+            assertArrayEquals(bytes, Files.readAllBytes(out1));
+            assertArrayEquals(bytes, Files.readAllBytes(out2));
+
+            // Empty file
+            Path empty = Files.createTempFile("empty", null);
+            assertEquals(0L, IOUtilities.copyAsync(empty, out1).get().longValue());
+            assertEquals(0, Files.size(out1));
+
+            // Failures complete the future exceptionally, rather than throw.
+            CompletableFuture<Long> missing = IOUtilities.copyAsync(
+                    in.resolveSibling("does-not-exist"), out1, executor);
+            ExecutionException e = assertThrows(ExecutionException.class, missing::get);
+            assertTrue(e.getCause() instanceof NoSuchFileException);
+
+            // Cancellation
+            // (the copy may already have finished, in which case cancel is a no-op)
+            CompletableFuture<Long> cancelled = IOUtilities.copyAsync(in, out1, 1, executor);
+            assertEquals(cancelled.cancel(true), cancelled.isCancelled());
+            assertTrue(cancelled.isDone());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * With {@link CopyOptions}, each byte level copy computes the CRC32C of
+     * the data inline. Copies which move chunks concurrently combine the
+     * chunk checksums, which must equal the checksum of the whole file.
+     */
+    @Test
+    void copyChecksums() throws Exception {
+        final byte[] bytes = new byte[5 * 1024 * 1024 + 11];
+        new Random(42).nextBytes(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        final long expected = crc.getValue();
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outchecksum", null);
+        Files.write(in, bytes);
+
+        CopyOptions checksum = CopyOptions.newBuilder().setChecksum(true).build();
+        CopyOptions verify = CopyOptions.newBuilder().setVerify(true).build();
+        assertTrue(verify.isChecksum());
+
+        List<CopyResult> results = new ArrayList<>();
+        for (CopyOptions options : Arrays.asList(checksum, verify)) {
+            results.add(IOUtilities.byteCopy(in, out, options));
+            results.add(IOUtilities.channelCopy(in, out, 1000, options));
+            results.add(IOUtilities.mappedCopy(in, out, 1024 * 1024 + 7, options));
+            results.add(IOUtilities.parallelCopy(in, out, 4, 100_003, options));
+            results.add(IOUtilities.copyAsync(in, out, 3, null, options).get(30, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            CopyResult result = results.get(i);
+            assertEquals(bytes.length, result.getBytes(), result.toString());
+            assertEquals(expected, result.getChecksum(), result.toString());
+            assertEquals(i >= results.size() / 2, result.isVerified());
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        // Without options, no checksum is computed.
+        CopyResult plain = IOUtilities.byteCopy(in, out, CopyOptions.defaults());
+        assertFalse(plain.hasChecksum());
+        assertThrows(IllegalStateException.class, plain::getChecksum);
+
+        // Empty files have a checksum of 0.
+        Path empty = Files.createTempFile("empty", null);
+        assertEquals(0, IOUtilities.parallelCopy(empty, out, 4, 1024, verify).getChecksum());
+        assertEquals(0, IOUtilities.copyAsync(empty, out, 2, null, verify).get().getChecksum());
+
+        // A destination which doesn't match fails verification.
+        Files.write(out, bytes);
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~bytes[1000]}), 1000);
+        }
+        IOException e = assertThrows(IOException.class,
+                () -> IOUtilities.verify(out, new CopyResult(bytes.length, expected, false)));
+        assertTrue(e.getMessage().contains("failed verification"));
+    }
+
+    /**
+     * {@link IOUtilities#charCopy(Path, Charset, Path, Charset, CodingErrorAction)}
+     * converts between charsets a buffer at a time.
+     */
+    @Test
+    void charCopyTranscoding() throws IOException {
+        // Large enough to span multiple buffers, with multi-byte UTF-8
+        // sequences straddling buffer boundaries.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            sb.append("Caf\u00e9 ").append(i).append('\n');
+        }
+        final String text = sb.toString();
+
+        Path latin1 = Files.createTempFile("latin1", null);
+        Path utf8 = Files.createTempFile("utf8", null);
+        Path utf16 = Files.createTempFile("utf16", null);
+        Files.write(latin1, text.getBytes(StandardCharsets.ISO_8859_1));
+
+        IOUtilities.charCopy(latin1, StandardCharsets.ISO_8859_1,
+                utf8, StandardCharsets.UTF_8, CodingErrorAction.REPORT);
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(utf8));
+
+        IOUtilities.charCopy(utf8, StandardCharsets.UTF_8,
+                utf16, StandardCharsets.UTF_16BE, CodingErrorAction.REPORT);
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_16BE), Files.readAllBytes(utf16));
+
+        // Malformed input : 0xFF is never valid UTF-8, and the input ends
+        // with a truncated multi-byte sequence.
+        Path malformed = Files.createTempFile("malformed", null);
+        Path out = Files.createTempFile("out", null);
+        Files.write(malformed, new byte[]{'a', (byte) 0xFF, 'b', (byte) 0xC3});
+
+        assertThrows(CharacterCodingException.class, () -> IOUtilities.charCopy(
+                malformed, StandardCharsets.UTF_8,
+                out, StandardCharsets.UTF_8, CodingErrorAction.REPORT));
+
+        IOUtilities.charCopy(malformed, StandardCharsets.UTF_8,
+                out, StandardCharsets.UTF_8, CodingErrorAction.REPLACE);
+        assertEquals("a\uFFFDb\uFFFD", new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+
+        IOUtilities.charCopy(malformed, StandardCharsets.UTF_8,
+                out, StandardCharsets.UTF_8, CodingErrorAction.IGNORE);
+        assertEquals("ab", new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * ASCII and well formed UTF-8 runs are copied as raw bytes, everything else
+     * goes through the decoder. The output must match decoding / encoding
+     * the whole input in one shot.
+     */
+    @Test
+    void charCopyFastPath() throws IOException {
+        final String[] pieces = {"plain ascii ", "caf\u00e9 ", "\u20ac", "\uD83D\uDE00",
+                "\u65e5\u672c", "\n"};
+        final Random random = new Random(42);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        while (bos.size() < 300_000) {
+            if (random.nextInt(50) == 0) {
+                bos.write(0xFF); // malformed
+            } else {
+                bos.write(pieces[random.nextInt(pieces.length)].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final byte[] bytes = bos.toByteArray();
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("out", null);
+        Files.write(in, bytes);
+
+        for (Charset target : new Charset[]{StandardCharsets.UTF_8,
+                StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE}) {
+            IOUtilities.charCopy(in, StandardCharsets.UTF_8, out, target,
+                    CodingErrorAction.REPLACE);
+            CharBuffer decoded = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(bytes));
+            ByteBuffer encoded = target.newEncoder()
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .encode(decoded);
+            byte[] expected = new byte[encoded.remaining()];
+            encoded.get(expected);
+            assertArrayEquals(expected, Files.readAllBytes(out), target.name());
+        }
+    }
+
+    /**
+     * {@link IOUtilities#lineCopy} rewrites every line terminator ("\n",
+     * "\r", "\r\n") as the platform line separator, and terminates the last
+     * line.
+     */
+    @Test
+    void lineCopyTerminators() throws IOException {
+        final String sep = System.lineSeparator();
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outlines", null);
+
+        String[][] cases = {
+                {"", ""},
+                {"a", "a" + sep},
+                {"a\n", "a" + sep},
+                {"a\r\nb\rc\n\nd", "a" + sep + "b" + sep + "c" + sep + sep + "d" + sep},
+                {"a\r\r\n", "a" + sep + sep},
+        };
+        for (String[] c : cases) {
+            Files.write(in, c[0].getBytes());
+            IOUtilities.lineCopy(in, out);
+            assertEquals(c[1], new String(Files.readAllBytes(out)));
+        }
+
+        // A large file, where "\r\n" pairs straddle buffer boundaries.
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            input.append("line ").append(i).append(i % 2 == 0 ? "\r\n" : "\n");
+            expected.append("line ").append(i).append(sep);
+        }
+        Files.write(in, input.toString().getBytes());
+        IOUtilities.lineCopy(in, out);
+        assertEquals(expected.toString(), new String(Files.readAllBytes(out)));
+    }
+
+    /**
+     * {@link IOUtilities#lineCopy(Path, Path, LineTransform)} hands each line
+     * to a transform as a byte slice. Transforms can filter, rewrite, or
+     * split lines without creating strings.
+     */
+    @Test
+    void lineCopyTransform() throws IOException {
+        final String sep = System.lineSeparator();
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outlines", null);
+        Files.write(in, "INFO a\r\nERROR b\nINFO c\rERROR d".getBytes());
+
+        // Filter
+        final byte[] error = "ERROR".getBytes();
+        IOUtilities.lineCopy(in, out, LineTransform.filter(line -> line.startsWith(error)));
+        assertEquals("ERROR b" + sep + "ERROR d" + sep, new String(Files.readAllBytes(out)));
+
+        // Transform : write only the message after the first space.
+        IOUtilities.lineCopy(in, out, (line, sink) -> {
+            int space = line.indexOf((byte) ' ');
+            sink.writeLine(line.array(), line.offset() + space + 1, line.length() - space - 1);
+        });
+        assertEquals("a" + sep + "b" + sep + "c" + sep + "d" + sep,
+                new String(Files.readAllBytes(out)));
+
+        IOUtilities.lineCopy(in, out, LineTransform.IDENTITY);
+        assertEquals("INFO a" + sep + "ERROR b" + sep + "INFO c" + sep + "ERROR d" + sep,
+                new String(Files.readAllBytes(out)));
+    }
+
+    /**
+     * {@link LinePipeline} transforms batches of lines on worker threads.
+     * Output order must match input order regardless of which worker
+     * finishes first.
+     */
+    @Test
+    void lineCopyPipelined() throws IOException {
+        final String sep = System.lineSeparator();
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outlines", null);
+
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            input.append("line ").append(i).append('\n');
+            if (i % 3 != 0) {
+                expected.append("LINE ").append(i).append(sep);
+            }
+        }
+        Files.write(in, input.toString().getBytes());
+
+        // Drop every 3rd line and upper case the rest. Transforms run
+        // concurrently, so they must not share mutable state.
+        final LineTransform transform = (line, sink) -> {
+            int n = Integer.parseInt(line.toString().substring(5));
+            if (n % 3 != 0) {
+                byte[] upper = line.toString().toUpperCase().getBytes();
+                sink.writeLine(upper, 0, upper.length);
+            }
+        };
+
+        for (int workers = 0; workers <= 4; workers += 2) {
+            Files.deleteIfExists(out);
+            LinePipeline.newBuilder()
+                    .setWorkers(workers)
+                    .setBatchLines(100)
+                    .setQueueCapacity(2)
+                    .build()
+                    .copy(in, out, transform);
+            assertEquals(expected.toString(), new String(Files.readAllBytes(out)),
+                    "workers " + workers);
+        }
+
+        // Failures in a stage are rethrown to the caller.
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> IOUtilities.lineCopy(in, out, (line, sink) -> {
+                    throw new IllegalStateException("bad line");
+                }, 2));
+        assertEquals("bad line", e.getMessage());
+    }
+
+    /**
+     * {@link LineReader} must handle lines longer than its buffer and "\r\n"
+     * terminators split across reads.
+     */
+    @Test
+    void lineReaderSmallBuffer() throws IOException {
+        final String input = "short\r\na much longer line than the buffer\r\n\r\n\rlast";
+        final List<String> expected = Lists.newArrayList("short",
+                "a much longer line than the buffer", "", "", "last");
+
+        for (int bufferSize = 1; bufferSize < 10; bufferSize++) {
+            LineReader reader = new LineReader(Channels.newChannel(
+                    new ByteArrayInputStream(input.getBytes())), bufferSize);
+            List<String> actual = new ArrayList<>();
+            LineSlice line;
+            while ((line = reader.next()) != null) {
+                actual.add(line.toString());
+            }
+            assertEquals(expected, actual, "bufferSize " + bufferSize);
+        }
+    }
+
+    /**
+     * Memory mapped files are mapped in windows. Use a small window size to
+     * force a copy / scan across many windows, including a partial last one.
+     */
+    @Test
+    void mappedCopyAndView() throws IOException {
+        final byte[] bytes = new byte[1024 * 1024 + 17];
+        new Random(42).nextBytes(bytes);
+
+        Path in = Files.createTempFile("infile", null);
+        Path out = Files.createTempFile("outmapped", null);
+        Files.write(in, bytes);
+
+        IOUtilities.mappedCopy(in, out, 4096);
+        assertArrayEquals(bytes, Files.readAllBytes(out));
+
+        MappedFileView view = MappedFileView.open(in, 4096);
+        assertEquals(bytes.length, view.size());
+        assertEquals(257, view.windowCount());
+        assertEquals(17, view.window(256).remaining());
+
+        // Scan the view, without copying it onto the heap.
+        long sum = 0;
+        for (int i = 0; i < view.windowCount(); i++) {
+            ByteBuffer window = view.window(i);
+            while (window.hasRemaining()) {
+                sum += window.get();
+            }
+        }
+        long expected = 0;
+        for (byte b : bytes) {
+            expected += b;
+        }
+        assertEquals(expected, sum);
+
+        assertEquals(bytes[5000], view.get(5000));
+        byte[] span = new byte[100];
+        view.get(4050, span, 0, span.length); // crosses a window boundary
+        assertArrayEquals(Arrays.copyOfRange(bytes, 4050, 4150), span);
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(bytes.length));
+    }
+
     /**
      * {@link DataInputStream} provides methods to write primitive values to the
      * output stream.
@@ -140,13 +621,19 @@ public class IOTests {
         List<String> inHeaders = new ArrayList<>(headers.size());
         List<Integer> inValues = new ArrayList<>(values.size());
 
+        // The columnar format is DataInputStream compatible.
         try (DataInputStream inputStream = new DataInputStream(
                 new FileInputStream(outData.toFile()))) {
 
+            assertEquals(ColumnarFile.MAGIC, inputStream.readInt());
+            assertEquals(ColumnarFile.VERSION, inputStream.readShort());
+            assertEquals(10, inputStream.readInt());
             for (int i = 0; i < 10; i++) {
                 inHeaders.add(inputStream.readUTF());
             }
 
+            assertEquals(ColumnarFile.TYPE_INT, inputStream.readByte());
+            assertEquals(10, inputStream.readInt());
             for (int i = 0; i < 10; i++) {
                 inValues.add(inputStream.readInt());
             }
@@ -155,6 +642,182 @@ public class IOTests {
         assertEquals(headers, inHeaders);
         assertEquals(values, inValues);
 
+        ColumnarFile file = ColumnarFile.open(outData);
+        assertEquals(headers, file.headers());
+        IntBuffer mapped = file.values();
+        assertEquals(10, mapped.remaining());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, mapped.get(i));
+        }
+    }
+
+    /**
+     * {@link ColumnarFile} writes its value column in bulk and maps it back
+     * as an {@link IntBuffer}. Columns larger than the write buffer span
+     * several bulk writes.
+     */
+    @Test
+    void columnarFileRoundTrip() throws IOException {
+        int[] ints = new Random(11).ints(100_000).toArray();
+        Path out = Files.createTempFile("columnar", null);
+        // Only the remaining values are written.
+        IntBuffer src = IntBuffer.wrap(ints);
+        src.position(10);
+        ColumnarFile.write(out, Arrays.asList("a", "b"), src);
+        assertEquals(10, src.position());
+
+        ColumnarFile file = ColumnarFile.open(out);
+        assertEquals(ColumnarFile.VERSION, file.version());
+        assertEquals(Arrays.asList("a", "b"), file.headers());
+        IntBuffer values = file.values();
+        assertTrue(values.isReadOnly());
+        int[] read = new int[values.remaining()];
+        values.get(read);
+        assertArrayEquals(Arrays.copyOfRange(ints, 10, ints.length), read);
+
+        ColumnarFile.write(out, new ArrayList<>(), IntBuffer.allocate(0));
+        assertEquals(0, ColumnarFile.open(out).values().remaining());
+
+        Files.write(out, "not columnar at all, just some text".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> ColumnarFile.open(out));
+    }
+
+    /**
+     * Repeated headers are written once, in a dictionary. Each header is
+     * available as its code into the dictionary, so headers can be grouped
+     * without comparing strings.
+     */
+    @Test
+    void dataCopyDictionaryHeaders() throws IOException {
+        final int n = 30_000;
+        final String[] names = {"region-east", "region-west", "region-north", "\u00e9t\u00e9"};
+        List<String> headers = new ArrayList<>(n);
+        List<String> unique = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            headers.add(names[(i * 7) % names.length]);
+            unique.add(names[i % names.length] + i);
+        }
+        int[] values = IntStream.range(0, n).toArray();
+        Path repeated = Files.createTempFile("dictionary", null);
+        Path distinct = Files.createTempFile("distinct", null);
+        IOUtilities.dataCopy(headers, values, repeated);
+        IOUtilities.dataCopy(unique, values, distinct);
+        assertTrue(Files.size(repeated) * 3 < Files.size(distinct));
+
+        ColumnarFile file = ColumnarFile.open(repeated);
+        assertEquals(ColumnarFile.DICTIONARY_VERSION, file.version());
+        assertEquals(headers, file.headers());
+        assertEquals(Arrays.asList(names[0], names[3], names[2], names[1]), file.dictionary());
+        IntBuffer codes = file.headerCodes();
+        assertEquals(n, codes.remaining());
+        int[] counts = new int[file.dictionary().size()];
+        while (codes.hasRemaining()) {
+            counts[codes.get()]++;
+        }
+        assertArrayEquals(new int[]{n / 4, n / 4, n / 4, n / 4}, counts);
+        assertThrows(UnsupportedOperationException.class, () -> file.headers().set(0, "x"));
+
+        // Files without repeated headers aren't worth a dictionary, and
+        // keep the original version; codes are still available.
+        ColumnarFile plain = ColumnarFile.open(distinct);
+        assertEquals(ColumnarFile.VERSION, plain.version());
+        assertEquals(unique, plain.headers());
+        assertEquals(unique, plain.dictionary());
+        assertEquals(n - 1, plain.headerCodes().get(n - 1));
+    }
+
+    /**
+     * The primitive {@code dataCopy} overloads write {@code int}s,
+     * {@code long}s and {@code double}s without boxing them.
+     */
+    @Test
+    void dataCopyPrimitives() throws IOException {
+        final int n = 50_000;
+        List<String> headers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            headers.add("h" + i);
+        }
+        Path out = Files.createTempFile("primitives", null);
+
+        IOUtilities.dataCopy(headers, IntStream.range(0, n).toArray(), out);
+        ColumnarFile file = ColumnarFile.open(out);
+        assertEquals(headers, file.headers());
+        assertEquals(n, file.valueCount());
+        assertEquals(n - 1, file.values().get(n - 1));
+        assertThrows(IllegalStateException.class, file::longValues);
+
+        // Streams are consumed without knowing their size up front.
+        IOUtilities.dataCopy(headers.subList(0, 1), IntStream.range(0, n).map(i -> -i), out);
+        file = ColumnarFile.open(out);
+        assertEquals(n, file.valueCount());
+        assertEquals(-(n - 1), file.values().get(n - 1));
+        try (DataInputStream in = new DataInputStream(new FileInputStream(out.toFile()))) {
+            in.skipBytes(4 + 2 + 4);
+            in.readUTF();
+            assertEquals(ColumnarFile.TYPE_INT, in.readByte());
+            assertEquals(n, in.readInt());
+        }
+
+        long[] longs = new Random(3).longs(n).toArray();
+        IOUtilities.dataCopy(headers, longs, out);
+        long[] readLongs = new long[n];
+        ColumnarFile.open(out).longValues().get(readLongs);
+        assertArrayEquals(longs, readLongs);
+
+        double[] doubles = new Random(5).doubles(n).toArray();
+        IOUtilities.dataCopy(headers, doubles, out);
+        double[] readDoubles = new double[n];
+        ColumnarFile.open(out).doubleValues().get(readDoubles);
+        assertArrayEquals(doubles, readDoubles);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> IOUtilities.dataCopy(headers, new int[1], out));
+    }
+
+    /**
+     * {@code dataCopy} and {@code objectCopy} can write block compressed
+     * files. The readers recognize and decompress them.
+     */
+    @Test
+    void compressedCopies() throws IOException {
+        final int n = 200_000;
+        List<String> headers = new ArrayList<>(n);
+        List<Serializable> objects = new ArrayList<>(n);
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++) {
+            headers.add("header " + (i % 100));
+            objects.add(new Pair<>("key", i % 10));
+            ints[i] = i % 1000;
+        }
+        BlockCompression compression = BlockCompression.newBuilder()
+                .setBlockSize(64 * 1024)
+                .setParallelism(4)
+                .build();
+
+        Path plain = Files.createTempFile("plain", null);
+        Path compressed = Files.createTempFile("compressed", null);
+        IOUtilities.dataCopy(headers, ints, plain);
+        IOUtilities.dataCopy(headers, ints, compressed, compression);
+        assertTrue(Files.size(compressed) * 5 < Files.size(plain));
+
+        ColumnarFile file = ColumnarFile.open(compressed);
+        assertEquals(headers, file.headers());
+        int[] read = new int[n];
+        file.values().get(read);
+        assertArrayEquals(ints, read);
+
+        IOUtilities.objectCopy(headers, objects, plain);
+        IOUtilities.objectCopy(headers, objects, compressed, compression);
+        assertTrue(Files.size(compressed) * 5 < Files.size(plain));
+        try (ObjectReader reader = ObjectReader.open(compressed)) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(headers.get(i), reader.next());
+            }
+            for (int i = 0; i < n; i++) {
+                assertEquals(objects.get(i), reader.next());
+            }
+            assertFalse(reader.hasNext());
+        }
     }
 
     /**
@@ -202,6 +865,146 @@ public class IOTests {
 
     }
 
+    /**
+     * {@link ObjectReader} decodes an object stream one object at a time. The
+     * writer resets the stream periodically, so neither side accumulates
+     * every object written.
+     */
+    @Test
+    void objectReaderStreaming() throws IOException {
+        final int n = IOUtilities.OBJECT_RESET_INTERVAL * 3 + 7;
+        List<String> headers = new ArrayList<>(n);
+        List<Serializable> values = new ArrayList<>(n);
+        Pair<String, Integer> shared = new Pair<>("shared", -1);
+        for (int i = 0; i < n; i++) {
+            headers.add("header " + i);
+            values.add(i % 2 == 0 ? shared : new Pair<>("value", i));
+        }
+        Path out = Files.createTempFile("objects", null);
+        IOUtilities.objectCopy(headers, values, out);
+
+        try (ObjectReader reader = ObjectReader.open(out)) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(headers.get(i), reader.next());
+            }
+            assertEquals(values.get(0), reader.next());
+            assertEquals(values.get(1), reader.next());
+            // The remaining values are decoded as the stream is consumed.
+            try (Stream<Object> rest = reader.stream()) {
+                assertEquals(values.subList(2, n).stream().filter(shared::equals).count(),
+                        rest.filter(shared::equals).count());
+            }
+        }
+
+        try (Stream<Object> all = ObjectReader.open(out).stream()) {
+            assertEquals(2L * n, all.count());
+        }
+
+        // A file truncated mid object is an error, not a quiet end of stream.
+        byte[] bytes = Files.readAllBytes(out);
+        Files.write(out, Arrays.copyOf(bytes, bytes.length - 3));
+        try (Stream<Object> truncated = ObjectReader.open(out).stream()) {
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, truncated::count);
+            assertTrue(e.getCause() instanceof StreamCorruptedException);
+        }
+    }
+
+    /**
+     * {@link CodecRegistry} codecs write registered types as a tag and their
+     * fields, which is far smaller than Java serialization. Unregistered
+     * {@link Serializable} types fall back to serialization.
+     */
+    @Test
+    void objectCopyWithCodecs() throws IOException {
+        List<String> headers = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            headers.add("header " + i);
+            values.add(new Pair<>("first " + i, (long) -i));
+        }
+        values.set(0, Bike.BikeBuilder.newBuilder().setSpeed(10).setGear(3).setWheelCount(2).build());
+        values.set(1, MountainBike.MountainBikeBuilder.newBuilder()
+                .setMaxElevation(9000)
+                .setSpeed(21)
+                .setGear(30)
+                .setWheelCount(2)
+                .build());
+        values.set(2, new SuperPair<>("super", "pair"));
+        values.set(3, new Pair<>(null, "caf\u00e9 \u2603"));
+        values.set(4, Arrays.asList(1, 2, 3));
+
+        Path codec = Files.createTempFile("codec", null);
+        IOUtilities.objectCopy(headers, values, codec, CodecRegistry.defaults());
+
+        CodecFile file = CodecFile.read(codec, CodecRegistry.defaults());
+        assertEquals(headers, file.headers());
+        assertEquals(values, file.values());
+        assertEquals(MountainBike.class, file.values().get(1).getClass());
+        assertEquals(9000, ((MountainBike) file.values().get(1)).getMaxElevation());
+        assertEquals(SuperPair.class, file.values().get(2).getClass());
+
+        List<Serializable> serializable = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            serializable.add(new Pair<>("first " + i, (long) -i));
+        }
+        Path java = Files.createTempFile("java", null);
+        IOUtilities.objectCopy(headers, serializable, java);
+        IOUtilities.objectCopy(headers, serializable, codec, CodecRegistry.defaults());
+        assertTrue(Files.size(codec) * 3 < Files.size(java) * 2);
+
+        // Types without a codec must be Serializable.
+        assertThrows(NotSerializableException.class, () -> IOUtilities.objectCopy(
+                Arrays.asList("thread"), Arrays.asList(new Object()), codec, CodecRegistry.defaults()));
+    }
+
+    /**
+     * Custom codecs are registered with user tags. Reading requires the same
+     * registry.
+     */
+    @Test
+    void codecRegistryCustomCodec() throws IOException {
+        CodecRegistry registry = CodecRegistry.newBuilder()
+                .register(CodecRegistry.FIRST_USER_TAG, StringBuilder.class, new ObjectCodec<StringBuilder>() {
+                    @Override
+                    public void encode(StringBuilder value, CodecOutput out) throws IOException {
+                        out.writeString(value.toString());
+                    }
+
+                    @Override
+                    public StringBuilder decode(CodecInput in) throws IOException {
+                        return new StringBuilder(in.readString());
+                    }
+                })
+                .build();
+        Path out = Files.createTempFile("custom", null);
+        CodecFile.write(out, Arrays.asList("sb"), Arrays.asList(new StringBuilder("hello")), registry);
+        assertEquals("hello", CodecFile.read(out, registry).values().get(0).toString());
+        assertThrows(StreamCorruptedException.class, () -> CodecFile.read(out, CodecRegistry.defaults()));
+
+        assertThrows(IllegalArgumentException.class, () -> CodecRegistry.newBuilder()
+                .register(CodecRegistry.TAG_PAIR, StringBuilder.class, null));
+
+        // Varints round trip across the full range, including buffer boundaries.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodecOutput output = new CodecOutput(bytes, registry, 16);
+        long[] longs = {0, 1, -1, 127, 128, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE};
+        for (long n : longs) {
+            output.writeSignedVarLong(n);
+            output.writeVarLong(n);
+            output.writeSignedVarInt((int) n);
+        }
+        output.writeString("a string longer than the sixteen byte buffer");
+        output.flush();
+        CodecInput input = new CodecInput(new ByteArrayInputStream(bytes.toByteArray()), registry, 16);
+        for (long n : longs) {
+            assertEquals(n, input.readSignedVarLong());
+            assertEquals(n, input.readVarLong());
+            assertEquals((int) n, input.readSignedVarInt());
+        }
+        assertEquals("a string longer than the sixteen byte buffer", input.readString());
+        assertTrue(input.isAtEnd());
+    }
+
     @Test
     void testScanner() {
         String input = "  Damon     Ryan			Allison  ";
@@ -309,11 +1112,9 @@ public class IOTests {
     @Test
     void testDirectoryReading() throws IOException {
 
-        // TODO : recursive tree walking requires a FileVisitor.
-        // Implement a FileVisitor which returns a list of paths (sorted)
-        // that match a glob pattern. (Find a library that does this already -
-        // there has to be one out there if the default FileVisitor doesn't
-        // support it.
+        // Directory streams only list a single directory. For recursive,
+        // glob matched tree walking see ParallelFileWalker (and
+        // testParallelFileWalker below).
 
         Path tempDir = Files.createTempDirectory("tmp");
         Path javaFile = tempDir.resolve("java.txt");
@@ -350,4 +1151,101 @@ public class IOTests {
             assertTrue(paths.containsAll(Lists.newArrayList(javaFile, binFile)));
         }
     }
+
+    /**
+     * {@link IOUtilities#parallelLines} splits the file by byte range. Every
+     * split must start on a line, including splits which land inside a
+     * {@code "\r\n"} pair.
+     */
+    @Test
+    void parallelLines() throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(13);
+        String[] terminators = {"\n", "\r", "\r\n"};
+        for (int i = 0; i < 20_000; i++) {
+            text.append("line ").append(i).append(random.nextBoolean() ? " \u00e9" : "")
+                    .append(terminators[random.nextInt(terminators.length)]);
+        }
+        text.append("no terminator");
+        Path path = Files.createTempFile("lines", null);
+        Files.write(path, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<String> expected;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            expected = reader.lines().collect(Collectors.toList());
+        }
+        try (Stream<String> lines = IOUtilities.parallelLines(path)) {
+            assertTrue(lines.isParallel());
+            assertEquals(expected, lines.collect(Collectors.toList()));
+        }
+
+        // Force many tiny splits.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            LineSpliterator all = new LineSpliterator(channel, StandardCharsets.UTF_8, 3, 0, channel.size());
+            List<Spliterator<String>> splits = new ArrayList<>();
+            splits.add(all);
+            for (int i = 0; i < splits.size(); i++) {
+                Spliterator<String> prefix;
+                while ((prefix = splits.get(i).trySplit()) != null) {
+                    splits.add(i, prefix);
+                }
+            }
+            assertTrue(splits.size() > 1000);
+            List<String> lines = new ArrayList<>();
+            for (Spliterator<String> split : splits) {
+                split.forEachRemaining(lines::add);
+            }
+            assertEquals(expected, lines);
+        }
+
+        // Other charsets are split by Files.lines.
+        Files.write(path, "a\nb\n".getBytes(StandardCharsets.UTF_16));
+        try (Stream<String> lines = IOUtilities.parallelLines(path, StandardCharsets.UTF_16)) {
+            assertEquals(Arrays.asList("a", "b"), lines.collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * {@link ParallelFileWalker} walks subdirectories in parallel, matching
+     * paths relative to the root against a glob.
+     */
+    @Test
+    void testParallelFileWalker() throws IOException {
+        Path root = Files.createTempDirectory("walk");
+        List<Path> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Path dir = Files.createDirectories(root.resolve("a" + i).resolve("b"));
+            expected.add(Files.createFile(dir.resolve("deep" + i + ".txt")));
+            expected.add(Files.createFile(root.resolve("a" + i).resolve("top" + i + ".txt")));
+            Files.createFile(dir.resolve("skip" + i + ".bin"));
+        }
+        expected.sort(null);
+
+        ParallelFileWalker walker = ParallelFileWalker.newBuilder()
+                .setGlob("**/*.txt")
+                .setSorted(true)
+                .setParallelism(4)
+                .setQueueCapacity(2)
+                .build();
+        try (Stream<Path> paths = walker.walk(root)) {
+            assertEquals(expected, paths.collect(Collectors.toList()));
+        }
+
+        // maxDepth of 2 excludes the files in a*/b
+        try (Stream<Path> paths = IOUtilities.find(root, "**/*.txt", 2)) {
+            assertEquals(5, paths.count());
+        }
+
+        // Closing the stream early stops the walk.
+        try (Stream<Path> paths = ParallelFileWalker.newBuilder()
+                .setQueueCapacity(1).build().walk(root)) {
+            assertTrue(paths.findAny().isPresent());
+        }
+
+        assertThrows(UncheckedIOException.class, () -> {
+            try (Stream<Path> paths = IOUtilities.find(root.resolve("missing"), "**", Integer.MAX_VALUE)) {
+                paths.count();
+            }
+        });
+    }
 }
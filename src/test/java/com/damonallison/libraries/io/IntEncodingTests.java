@@ -0,0 +1,153 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IntEncoding} must round trip any sequence of {@code int}s with any
+ * encoding (including deltas which overflow), and should pick a compact
+ * encoding for data with some structure.
+ */
+class IntEncodingTests {
+
+    private static final byte[] ENCODINGS = {
+            IntEncoding.PLAIN, IntEncoding.VARINT, IntEncoding.DELTA,
+            IntEncoding.DELTA_OF_DELTA, IntEncoding.FOR, IntEncoding.DELTA_FOR};
+
+    private static List<int[]> datasets() {
+        Random random = new Random(17);
+        List<int[]> data = new ArrayList<>();
+        for (int n : new int[]{1, 2, 3, 100, IntEncoding.BLOCK_VALUES}) {
+            int[] sorted = new int[n];
+            int[] small = new int[n];
+            int[] extremes = new int[n];
+            int[] timestamps = new int[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = (i == 0 ? -50 : sorted[i - 1]) + random.nextInt(100);
+                small[i] = random.nextInt(16) - 8;
+                extremes[i] = i % 2 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+                timestamps[i] = 1_000_000 + 1000 * i + random.nextInt(3);
+            }
+            data.add(sorted);
+            data.add(small);
+            data.add(extremes);
+            data.add(timestamps);
+            data.add(new int[n]);
+            data.add(random.ints(n).toArray());
+        }
+        return data;
+    }
+
+    private static int[] roundTrip(int[] values, byte encoding) {
+        ByteBuffer buf = ByteBuffer.allocate(IntEncoding.MAX_BLOCK_BYTES);
+        IntEncoding codec = new IntEncoding();
+        codec.encode(values, values.length, encoding, buf);
+        buf.flip();
+        int[] decoded = new int[values.length];
+        assertEquals(values.length, codec.decode(buf, decoded, 0));
+        assertFalse(buf.hasRemaining());
+        return decoded;
+    }
+
+    @Test
+    void everyEncodingRoundTrips() {
+        for (int[] values : datasets()) {
+            for (byte encoding : ENCODINGS) {
+                assertArrayEquals(values, roundTrip(values, encoding),
+                        "encoding " + encoding + " of " + values.length + " values");
+            }
+        }
+    }
+
+    /**
+     * The encoding is chosen from a sample of the block, but the bit width
+     * of packed encodings comes from the whole block, so an outlier the
+     * sample missed still round trips.
+     */
+    @Test
+    void chooseFromSample() {
+        final int n = IntEncoding.BLOCK_VALUES;
+        int[] constant = new int[n];
+        Arrays.fill(constant, 42);
+        assertEquals(IntEncoding.FOR, IntEncoding.choose(constant, n));
+
+        int[] counter = new int[n];
+        int[] ids = new int[n];
+        int[] small = new int[n];
+        Random random = new Random(3);
+        for (int i = 0; i < n; i++) {
+            counter[i] = 5000 + 7 * i;
+            ids[i] = (i == 0 ? 0 : ids[i - 1]) + 1 + random.nextInt(20);
+            small[i] = 100 + random.nextInt(30);
+        }
+        assertEquals(IntEncoding.DELTA_FOR, IntEncoding.choose(counter, n));
+        assertEquals(IntEncoding.DELTA_FOR, IntEncoding.choose(ids, n));
+        assertEquals(IntEncoding.FOR, IntEncoding.choose(small, n));
+        assertEquals(IntEncoding.PLAIN, IntEncoding.choose(random.ints(n).toArray(), n));
+
+        small[n / 2 + 3] = 1 << 20;
+        ByteBuffer buf = ByteBuffer.allocate(IntEncoding.MAX_BLOCK_BYTES);
+        IntEncoding codec = new IntEncoding();
+        codec.encode(small, n, buf);
+        buf.flip();
+        int[] decoded = new int[n];
+        codec.decode(buf, decoded, 0);
+        assertArrayEquals(small, decoded);
+    }
+
+    @Test
+    void encodedColumnarFile() throws IOException {
+        final int n = 100_000;
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i < n / 2 ? 3 * i : i % 100;
+        }
+        List<String> headers = Collections.nCopies(n, "h");
+        Path plain = Files.createTempFile("plain", null);
+        Path encoded = Files.createTempFile("encoded", null);
+        IOUtilities.dataCopy(headers, values, plain);
+        IOUtilities.dataCopyEncoded(headers, values, encoded);
+        // The repeated headers are dictionary encoded, so the column dominates.
+        assertTrue(Files.size(encoded) < Files.size(plain) / 3);
+
+        ColumnarFile file = ColumnarFile.open(encoded);
+        assertEquals(headers, file.headers());
+        assertEquals(n, file.valueCount());
+        IntBuffer read = file.values();
+        assertTrue(read.isReadOnly());
+        int[] decoded = new int[n];
+        read.get(decoded);
+        assertArrayEquals(values, decoded);
+        assertEquals(0, file.values().position());
+        assertThrows(IllegalStateException.class, file::longValues);
+
+        ColumnarFile.writeEncoded(encoded, headers, IntBuffer.wrap(values), BlockCompression.defaults());
+        assertTrue(BlockCompressedFile.isBlockCompressed(encoded));
+        ColumnarFile.open(encoded).values().get(decoded);
+        assertArrayEquals(values, decoded);
+
+        // An empty column has no blocks.
+        ColumnarFile.writeEncoded(encoded, Collections.emptyList(), IntBuffer.allocate(0));
+        assertEquals(0, ColumnarFile.open(encoded).values().remaining());
+
+        // Corrupting the first block's encoding is detected.
+        IOUtilities.dataCopyEncoded(headers.subList(0, 1), new int[]{1}, encoded);
+        byte[] bytes = Files.readAllBytes(encoded);
+        int block = 4 + 2 + 4 + 2 + 1 + 1 + 4;
+        bytes[block] = 99;
+        Files.write(encoded, bytes);
+        assertThrows(IOException.class, () -> ColumnarFile.open(encoded));
+    }
+}
@@ -0,0 +1,123 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A {@link LineIndex} only samples every {@code interval}th line, so reads
+ * starting between samples must skip the right number of lines, whatever
+ * the line terminators are.
+ */
+class LineIndexTests {
+
+    private static Path textFile(int lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(21);
+        String[] terminators = {"\n", "\r", "\r\n"};
+        for (int i = 0; i < lines; i++) {
+            text.append(i % 10 == 0 ? "" : "line " + i + " \u00e9")
+                    .append(terminators[random.nextInt(terminators.length)]);
+        }
+        Path path = Files.createTempFile("indexed", ".log");
+        Files.write(path, text.toString().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static List<String> readLines(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void randomAccess() throws IOException {
+        Path path = textFile(10_000);
+        List<String> expected = readLines(path);
+        LineIndex index = LineIndex.build(path, 7);
+        assertEquals(expected.size(), index.lineCount());
+
+        Random random = new Random(4);
+        for (int i = 0; i < 200; i++) {
+            int first = random.nextInt(expected.size());
+            int count = random.nextInt(30);
+            assertEquals(expected.subList(first, Math.min(expected.size(), first + count)),
+                    index.lines(first, count, StandardCharsets.UTF_8));
+        }
+        assertEquals(expected.get(expected.size() - 1), index.line(expected.size() - 1));
+        assertTrue(index.lines(expected.size(), 10, StandardCharsets.UTF_8).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.line(expected.size()));
+    }
+
+    @Test
+    void sidecar() throws IOException {
+        Path path = textFile(5_000);
+        LineIndex built = LineIndex.build(path);
+        built.write();
+        Path sidecar = LineIndex.sidecar(path);
+        // One small varint per 128 lines, after a header of about 30 bytes.
+        assertTrue(Files.size(sidecar) < 120);
+
+        LineIndex read = LineIndex.read(path);
+        assertTrue(read.isCurrent());
+        assertEquals(built.lineCount(), read.lineCount());
+        assertEquals(built.interval(), read.interval());
+        assertEquals(built.line(4321), read.line(4321));
+
+        // Rewriting the file immediately, without changing its size, makes the
+        // index stale even if the timestamp granularity is coarse.
+        byte[] bytes = Files.readAllBytes(path);
+        int space = 0;
+        while (bytes[space] != ' ') {
+            space++;
+        }
+        bytes[space] = '\n';
+        Files.write(path, bytes);
+        assertFalse(LineIndex.read(path).isCurrent());
+        LineIndex rewritten = LineIndex.open(path);
+        assertEquals(built.lineCount() + 1, rewritten.lineCount());
+
+        // Appending makes the index stale; open() rebuilds it.
+        Files.write(path, "appended\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertFalse(LineIndex.read(path).isCurrent());
+        LineIndex reopened = LineIndex.open(path);
+        assertTrue(reopened.isCurrent());
+        assertEquals(built.lineCount() + 2, reopened.lineCount());
+        assertEquals("appended", reopened.line(reopened.lineCount() - 1));
+        assertTrue(LineIndex.read(path).isCurrent());
+
+        // A corrupt sidecar is rebuilt too.
+        Files.write(sidecar, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> LineIndex.read(path));
+        assertEquals(reopened.lineCount(), LineIndex.open(path).lineCount());
+    }
+
+    /**
+     * {@link IOUtilities#indexedLineCopy} indexes the source while copying
+     * it.
+     */
+    @Test
+    void indexedLineCopy() throws IOException {
+        Path path = textFile(3_000);
+        Path copy = Files.createTempFile("copy", null);
+        LineIndex index = IOUtilities.indexedLineCopy(path, copy, LineTransform.IDENTITY);
+        List<String> lines = readLines(path);
+        assertEquals(lines, readLines(copy));
+        assertEquals(lines.size(), index.lineCount());
+        assertEquals(lines.get(lines.size() - 1), index.line(lines.size() - 1));
+        assertTrue(LineIndex.read(path).isCurrent());
+
+        Path empty = Files.createTempFile("empty", null);
+        assertEquals(0, LineIndex.build(empty).lineCount());
+    }
+}
@@ -0,0 +1,149 @@
+package com.damonallison.libraries.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link Tokenizer} must produce exactly the tokens {@link Scanner} does,
+ * whether the delimiter is scanned by hand or with a regex.
+ */
+class TokenizerTests {
+
+    private static List<String> scan(String input, Pattern delimiter) {
+        List<String> tokens = new ArrayList<>();
+        try (Scanner s = new Scanner(input)) {
+            s.useDelimiter(delimiter);
+            while (s.hasNext()) {
+                tokens.add(s.next());
+            }
+        }
+        return tokens;
+    }
+
+    @Test
+    void simpleDelimiters() {
+        for (String p : new String[]{",", "\\|", "\\.", "\t", "\\t", ",+", "\\s", "\\s+", "[,;]", "[,;]+",
+                "[\\s,]+", "[|\\]]", "\u00e9", "[\u00e9x]+"}) {
+            assertTrue(Tokenizer.of(Pattern.compile(p)).isSimple(), p);
+        }
+        for (String p : new String[]{"a|b", ",,", "[^,]", "[a-z]", "\\d", "\\s*", "\\s+?", ".", "(?i)x",
+                "\\b", ""}) {
+            assertFalse(Tokenizer.of(Pattern.compile(p)).isSimple(), p);
+        }
+        assertFalse(Tokenizer.of(Pattern.compile(",", Pattern.LITERAL)).isSimple());
+    }
+
+    @Test
+    void matchesScanner() {
+        String[] patterns = {",", ",+", "\\s", "\\s+", "[,;]", "[,; ]+", "\\|", "\u00e9",
+                ", ?", "\\s*", ";|,,", "[0-9]+", "\\b", "x*"};
+        char[] alphabet = {'a', 'b', ',', ';', ' ', '\t', '\n', '|', '1', '\u00e9', 'x'};
+        Random random = new Random(5);
+        List<String> inputs = new ArrayList<>(Arrays.asList("", ",", ",,", "a", ",a", "a,", "a,,b",
+                ",,a,,", "  Damon     Ryan\t\t\tAllison  "));
+        for (int i = 0; i < 500; i++) {
+            char[] chars = new char[random.nextInt(30)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            inputs.add(new String(chars));
+        }
+        for (String p : patterns) {
+            Pattern delimiter = Pattern.compile(p);
+            Tokenizer tokenizer = Tokenizer.of(delimiter);
+            for (String input : inputs) {
+                List<String> expected = scan(input, delimiter);
+                assertEquals(expected, tokenizer.split(input), () -> p + " on '" + input + "'");
+                // Not a String, so the indexOf fast path isn't used.
+                assertEquals(expected, tokenizer.split(CharBuffer.wrap(input)), () -> p + " on '" + input + "'");
+            }
+        }
+    }
+
+    /**
+     * Files are tokenized lazily. Simple ASCII delimiters are found in the
+     * mapped bytes; tiny map windows force tokens to span windows.
+     */
+    @Test
+    void mappedFile() throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(9);
+        String[] words = {"alpha", "\u00e9t\u00e9", "\u65e5\u672c", "", "x"};
+        for (int i = 0; i < 2000; i++) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextBoolean() ? "," : ", \n");
+        }
+        final String input = text.toString();
+        Path path = Files.createTempFile("tokens", null);
+        Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+
+        for (String p : new String[]{",", "[, \n]+", "\\s+", ",\\s*"}) {
+            Pattern delimiter = Pattern.compile(p);
+            List<String> expected = scan(input, delimiter);
+            try (Stream<CharSequence> tokens = IOUtilities.tokenize(path, delimiter, StandardCharsets.UTF_8)) {
+                assertEquals(expected, tokens.map(CharSequence::toString).collect(Collectors.toList()), p);
+            }
+            // Mapped tokens and Scanner strings compare by content alike.
+            try (Stream<CharSequence> tokens = IOUtilities.tokenize(path, delimiter, StandardCharsets.UTF_8)) {
+                assertEquals(expected.stream().distinct().count(), tokens.distinct().count(), p);
+            }
+            try (Stream<CharSequence> tokens = IOUtilities.tokenize(path, delimiter, StandardCharsets.UTF_8)) {
+                assertEquals(expected.stream().filter("alpha"::equals).count(),
+                        tokens.filter("alpha"::contentEquals).count(), p);
+            }
+            Tokenizer tokenizer = Tokenizer.of(delimiter);
+            if (tokenizer.byteDelimiters() != null) {
+                MappedTokenSpliterator small = new MappedTokenSpliterator(MappedFileView.open(path, 7),
+                        tokenizer.byteDelimiters(), tokenizer.isGreedy(), StandardCharsets.UTF_8);
+                assertEquals(expected, StreamSupport.stream(small, false)
+                        .map(CharSequence::toString).collect(Collectors.toList()), p);
+            }
+        }
+
+        // Charsets which aren't ASCII transparent are decoded as they are read.
+        Files.write(path, input.getBytes(StandardCharsets.UTF_16));
+        try (Stream<CharSequence> tokens = IOUtilities.tokenize(path, Pattern.compile(","), StandardCharsets.UTF_16)) {
+            assertEquals(scan(input, Pattern.compile(",")).size(), tokens.count());
+        }
+
+        Files.write(path, new byte[0]);
+        try (Stream<CharSequence> tokens = IOUtilities.tokenize(path, Pattern.compile(","), StandardCharsets.UTF_8)) {
+            assertEquals(0, tokens.count());
+        }
+    }
+
+    /**
+     * The visitor is given offsets rather than substrings.
+     */
+    @Test
+    void visitor() {
+        final String input = "id=7, name=x, , tail";
+        final int[] offsets = new int[8];
+        final int[] count = {0};
+        IOUtilities.tokenize(input, Pattern.compile(",\\s*"), (s, start, end) -> {
+            assertSame(input, s);
+            offsets[count[0] * 2] = start;
+            offsets[count[0] * 2 + 1] = end;
+            count[0]++;
+        });
+        assertEquals(4, count[0]);
+        assertArrayEquals(new int[]{0, 4, 6, 12, 14, 14, 16, 20}, offsets);
+        assertEquals(Arrays.asList("id=7", "name=x", "", "tail"),
+                IOUtilities.tokenize(input, Pattern.compile(",\\s*")));
+    }
+}